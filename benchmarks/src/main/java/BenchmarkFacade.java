@@ -0,0 +1,66 @@
+import com.joaofnds.macroprocessor.benchmarks.Facade;
+import com.joaofnds.macroprocessor.benchmarks.Workload;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * The benchmarks' way into the macro processor, see {@link Facade}.
+ */
+public class BenchmarkFacade implements Facade {
+    @Override
+    public Workload execute(int iterations, String dispatch) {
+        var program = new Program(Program.Dispatch.valueOf(dispatch));
+        program.loadIntoMemory(program.firstPass(LineScanner.parse(Workloads.loopSource(iterations))));
+
+        return () -> {
+            program.memory.rewind();
+            program.execute();
+            return program.memory;
+        };
+    }
+
+    @Override
+    public Workload firstPass(int length, int symbols) {
+        var lines = LineScanner.parse(Workloads.assemblySource(length, symbols));
+
+        return () -> new Program().firstPass(lines);
+    }
+
+    @Override
+    public Workload expand(int params) {
+        var names = new ArrayList<String>();
+        var args = new ArrayList<String>();
+        for (int i = 0; i < params; i++) {
+            names.add("p" + i);
+            args.add("arg" + i);
+        }
+
+        var builder = new MacroBuilder();
+        builder.parseLine("m MACRO " + String.join(", ", names));
+        for (var name : names) {
+            builder.parseLine("add " + name);
+            builder.parseLine("store " + name + "_copy, " + name);
+        }
+
+        var macro = builder.build();
+        var out = new StringBuilder();
+
+        return () -> {
+            out.setLength(0);
+            macro.expand(args, out);
+            return out;
+        };
+    }
+
+    @Override
+    public Workload processMacro(int macros, int calls) throws IOException {
+        var inputFile = Workloads.write(Workloads.macroSource(macros, calls)).toString();
+
+        return () -> {
+            var processor = new MacroProcessor(inputFile);
+            processor.process(LineSink.discard());
+            return processor;
+        };
+    }
+}
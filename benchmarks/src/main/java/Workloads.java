@@ -0,0 +1,70 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generated guest sources for the benchmarks.
+ */
+class Workloads {
+    private Workloads() {
+    }
+
+    /**
+     * Defines {@code macros} two-parameter macros, then calls them {@code calls} times in turn.
+     */
+    static List<String> macroSource(int macros, int calls) {
+        var lines = new ArrayList<String>();
+
+        for (int m = 0; m < macros; m++) {
+            lines.add("m" + m + " MACRO x, y");
+            lines.add("add x");
+            lines.add("store y");
+            lines.add("write y");
+            lines.add("ENDM");
+        }
+
+        for (int c = 0; c < calls; c++) {
+            lines.add("m" + (c % macros) + " s" + (c % 64) + ", t" + (c % 16));
+        }
+
+        return lines;
+    }
+
+    /**
+     * {@code length} instructions referencing {@code symbols} distinct symbols, each line with its own label.
+     */
+    static List<String> assemblySource(int length, int symbols) {
+        var lines = new ArrayList<String>();
+
+        for (int i = 0; i < length; i++) {
+            lines.add("l" + i + ": add s" + (i % symbols));
+        }
+        lines.add("hlt ax");
+
+        return lines;
+    }
+
+    /**
+     * Counts up to {@code iterations} in a compare-and-branch loop, without any I/O.
+     */
+    static List<String> loopSource(int iterations) {
+        return List.of(
+                "one 1",
+                "max " + iterations,
+                "init: add one",
+                "store acc",
+                "cmp max",
+                "jp exit",
+                "jmp init",
+                "exit: hlt ax"
+        );
+    }
+
+    static Path write(List<String> source) throws IOException {
+        var file = Files.createTempFile("macro-processor-bench", ".asm");
+        file.toFile().deleteOnExit();
+        return Files.write(file, source);
+    }
+}
@@ -0,0 +1,33 @@
+package com.joaofnds.macroprocessor.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecuteBenchmark {
+    @Param({"1000", "30000"})
+    int iterations;
+
+    @Param({"TABLE", "FUSED", "COMPILED", "CHAIN"})
+    String dispatch;
+
+    private Workload execute;
+
+    // a run leaves the memory halted; the workload rewinds the registers instead of loading the program again
+    @Setup
+    public void setup() {
+        execute = Facade.load().execute(iterations, dispatch);
+    }
+
+    @Benchmark
+    public Object execute() throws IOException {
+        return execute.run();
+    }
+}
@@ -0,0 +1,38 @@
+package com.joaofnds.macroprocessor.benchmarks;
+
+import java.io.IOException;
+
+/**
+ * Sets up the workloads the benchmarks measure. JMH only takes benchmarks in a named package, which can't
+ * import the macro processor classes from the default package, so the implementation, BenchmarkFacade,
+ * lives in the default package and is loaded by name.
+ */
+public interface Facade {
+    static Facade load() {
+        try {
+            return (Facade) Class.forName("BenchmarkFacade").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("BenchmarkFacade isn't on the class path", e);
+        }
+    }
+
+    /**
+     * Program.execute on a loop counting up to {@code iterations}, loaded once and rewound before each run.
+     */
+    Workload execute(int iterations, String dispatch);
+
+    /**
+     * Program.firstPass on {@code length} instructions referencing {@code symbols} distinct symbols.
+     */
+    Workload firstPass(int length, int symbols);
+
+    /**
+     * Macro.expand of a macro with {@code params} parameters.
+     */
+    Workload expand(int params);
+
+    /**
+     * MacroProcessor.process on a file defining {@code macros} macros and calling them {@code calls} times.
+     */
+    Workload processMacro(int macros, int calls) throws IOException;
+}
@@ -0,0 +1,34 @@
+package com.joaofnds.macroprocessor.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FirstPassBenchmark {
+    // every line has its own label as well, so at 16384 the symbol table is full; with constant time
+    // symbol lookups the time per line stays flat as it grows
+    @Param({"1000", "10000", "16384"})
+    int length;
+
+    @Param({"100", "1000", "16384"})
+    int symbols;
+
+    private Workload firstPass;
+
+    @Setup
+    public void setup() {
+        firstPass = Facade.load().firstPass(length, symbols);
+    }
+
+    @Benchmark
+    public Object firstPass() throws IOException {
+        return firstPass.run();
+    }
+}
@@ -0,0 +1,29 @@
+package com.joaofnds.macroprocessor.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MacroExpandBenchmark {
+    @Param({"1", "4", "16"})
+    int params;
+
+    private Workload expand;
+
+    @Setup
+    public void setup() {
+        expand = Facade.load().expand(params);
+    }
+
+    @Benchmark
+    public Object expand() throws IOException {
+        return expand.run();
+    }
+}
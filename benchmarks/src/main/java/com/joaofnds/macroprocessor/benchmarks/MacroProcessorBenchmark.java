@@ -0,0 +1,32 @@
+package com.joaofnds.macroprocessor.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MacroProcessorBenchmark {
+    @Param({"10", "100"})
+    int macros;
+
+    @Param({"1000", "10000"})
+    int calls;
+
+    private Workload processMacro;
+
+    @Setup
+    public void setup() throws IOException {
+        processMacro = Facade.load().processMacro(macros, calls);
+    }
+
+    @Benchmark
+    public Object processMacro() throws IOException {
+        return processMacro.run();
+    }
+}
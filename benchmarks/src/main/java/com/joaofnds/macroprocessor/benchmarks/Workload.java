@@ -0,0 +1,13 @@
+package com.joaofnds.macroprocessor.benchmarks;
+
+import java.io.IOException;
+
+/**
+ * One measured operation, everything it needs already set up.
+ */
+public interface Workload {
+    /**
+     * @return what the operation produced, for the benchmark to hand to the blackhole
+     */
+    Object run() throws IOException;
+}
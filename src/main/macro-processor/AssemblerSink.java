@@ -0,0 +1,47 @@
+/**
+ * Feeds macro processor output straight into the first pass of a {@link Program}, and records
+ * the {@link FirstPassEvent} for it when closed.
+ */
+class AssemblerSink implements LineSink {
+    private final Program program;
+    private final LineScanner scanner = new LineScanner();
+    private final FirstPassEvent event = new FirstPassEvent();
+    private long lines;
+    private long assemblingTime;
+
+    AssemblerSink(Program program) {
+        this.program = program;
+        event.begin();
+    }
+
+    @Override
+    public void accept(String line) {
+        accept(line, scanner.scan(line));
+    }
+
+    @Override
+    public void accept(String line, LineScanner scanned) {
+        if (scanned.isBlank()) return;
+
+        lines++;
+        if (!event.isEnabled()) {
+            program.assemble(scanned.parsedLine());
+            return;
+        }
+
+        long start = System.nanoTime();
+        program.assemble(scanned.parsedLine());
+        assemblingTime += System.nanoTime() - start;
+    }
+
+    @Override
+    public void close() {
+        event.end();
+        if (event.shouldCommit()) {
+            event.lines = lines;
+            event.instructions = program.instructions.size();
+            event.assemblingTime = assemblingTime;
+            event.commit();
+        }
+    }
+}
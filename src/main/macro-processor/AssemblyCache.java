@@ -0,0 +1,123 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+
+/**
+ * On-disk cache of assembled programs as {@link ObjectFile}s, named after a hash of their source.
+ * <p>
+ * Entries are written to a temporary file and atomically renamed into place, so processes
+ * sharing the directory only ever see complete entries. A hit refreshes the entry's
+ * modification time, and when the directory grows past its size cap the least recently
+ * used entries are deleted.
+ */
+class AssemblyCache {
+    static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+    private static final String EXTENSION = ".obj";
+
+    private final Path directory;
+    private final long maxSize;
+
+    AssemblyCache(Path directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Hash of everything the assembled program depends on: the source text, which holds the
+     * macro definitions it uses, the object file format, and the versions of the assembler and
+     * the optimizer, so entries from an older build aren't served.
+     */
+    static String key(Path source) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        for (short version : new short[]{ObjectFile.VERSION, Program.ASSEMBLER_VERSION, Optimizer.VERSION}) {
+            digest.update((byte) (version >> 8));
+            digest.update((byte) version);
+        }
+
+        try (InputStream in = Files.newInputStream(source)) {
+            var buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @return the cached object file, or null on a miss
+     */
+    Path lookup(String key) {
+        var path = entry(key);
+
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            return path;
+        } catch (IOException e) {
+            return null; // not cached, or evicted by another process
+        }
+    }
+
+    void store(String key, IntermediateFile intermediateFile) throws IOException {
+        Files.createDirectories(directory);
+
+        var temporary = Files.createTempFile(directory, key, ".tmp");
+        try {
+            ObjectFile.write(intermediateFile, temporary);
+            Files.move(temporary, entry(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        evict();
+    }
+
+    private void evict() throws IOException {
+        record Entry(Path path, long size, FileTime lastUsed) {
+        }
+
+        var entries = new ArrayList<Entry>();
+        long size = 0;
+
+        try (var paths = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (var path : paths) {
+                try {
+                    var entry = new Entry(path, Files.size(path), Files.getLastModifiedTime(path));
+                    entries.add(entry);
+                    size += entry.size;
+                } catch (NoSuchFileException e) {
+                    // evicted by another process meanwhile
+                }
+            }
+        }
+
+        entries.sort(Comparator.comparing(Entry::lastUsed));
+
+        for (var entry : entries) {
+            if (size <= maxSize) break;
+
+            Files.deleteIfExists(entry.path);
+            size -= entry.size;
+        }
+    }
+
+    private Path entry(String key) {
+        return directory.resolve(key + EXTENSION);
+    }
+}
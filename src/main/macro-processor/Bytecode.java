@@ -0,0 +1,157 @@
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Code of a single method being written for {@link ClassFileWriter}, with labels for forward branches.
+ * Only the instructions {@link GuestCompiler} emits are here. Branches use 16 bit offsets, so callers
+ * must keep the code under 32K and check {@link #size()}.
+ */
+class Bytecode {
+    static final int ALOAD = 0x19;
+    static final int ASTORE = 0x3A;
+    static final int ILOAD = 0x15;
+    static final int ISTORE = 0x36;
+    static final int LLOAD = 0x16;
+    static final int LSTORE = 0x37;
+    static final int LCONST_0 = 0x09;
+    static final int LCONST_1 = 0x0A;
+    static final int ICONST_1 = 0x04;
+    static final int SIPUSH = 0x11;
+    static final int SALOAD = 0x35;
+    static final int SASTORE = 0x56;
+    static final int IADD = 0x60;
+    static final int ISUB = 0x64;
+    static final int LADD = 0x61;
+    static final int IAND = 0x7E;
+    static final int ISHR = 0x7A;
+    static final int I2S = 0x93;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9A;
+    static final int GOTO = 0xA7;
+    static final int TABLESWITCH = 0xAA;
+    static final int LRETURN = 0xAD;
+    static final int RETURN = 0xB1;
+    static final int GETFIELD = 0xB4;
+    static final int PUTFIELD = 0xB5;
+    static final int INVOKEVIRTUAL = 0xB6;
+    static final int INVOKESPECIAL = 0xB7;
+    static final int INVOKESTATIC = 0xB8;
+
+    static class Label {
+        private int position = -1;
+    }
+
+    // a 16 bit branch offset, or a 32 bit one in a switch, to patch once its label is placed
+    private record Fixup(Label label, int opcodePosition, int at, boolean wide) {
+    }
+
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    private final List<Fixup> fixups = new ArrayList<>();
+    private final int maxStack;
+    private final int maxLocals;
+
+    Bytecode(int maxStack, int maxLocals) {
+        this.maxStack = maxStack;
+        this.maxLocals = maxLocals;
+    }
+
+    int maxStack() {
+        return maxStack;
+    }
+
+    int maxLocals() {
+        return maxLocals;
+    }
+
+    int size() {
+        return code.size();
+    }
+
+    Bytecode op(int opcode) {
+        code.write(opcode);
+        return this;
+    }
+
+    Bytecode local(int opcode, int index) {
+        code.write(opcode);
+        code.write(index);
+        return this;
+    }
+
+    Bytecode sipush(short value) {
+        code.write(SIPUSH);
+        u2(value);
+        return this;
+    }
+
+    /**
+     * getfield, putfield and the invokes, given the constant pool index of their field or method.
+     */
+    Bytecode member(int opcode, int index) {
+        code.write(opcode);
+        u2(index);
+        return this;
+    }
+
+    Bytecode branch(int opcode, Label label) {
+        int position = code.size();
+        code.write(opcode);
+        fixups.add(new Fixup(label, position, code.size(), false));
+        u2(0);
+        return this;
+    }
+
+    Bytecode tableswitch(Label otherwise, Label[] cases) {
+        int position = code.size();
+        code.write(TABLESWITCH);
+        while (code.size() % 4 != 0) code.write(0);
+
+        fixups.add(new Fixup(otherwise, position, code.size(), true));
+        u4(0);
+        u4(0);
+        u4(cases.length - 1);
+        for (var label : cases) {
+            fixups.add(new Fixup(label, position, code.size(), true));
+            u4(0);
+        }
+        return this;
+    }
+
+    Bytecode place(Label label) {
+        label.position = code.size();
+        return this;
+    }
+
+    byte[] toByteArray() {
+        byte[] bytes = code.toByteArray();
+
+        for (var fixup : fixups) {
+            if (fixup.label.position == -1) throw new IllegalStateException("label never placed");
+
+            int offset = fixup.label.position - fixup.opcodePosition;
+            if (fixup.wide) {
+                bytes[fixup.at] = (byte) (offset >> 24);
+                bytes[fixup.at + 1] = (byte) (offset >> 16);
+                bytes[fixup.at + 2] = (byte) (offset >> 8);
+                bytes[fixup.at + 3] = (byte) offset;
+            } else {
+                if (offset != (short) offset) throw new IllegalStateException("branch offset out of range: " + offset);
+                bytes[fixup.at] = (byte) (offset >> 8);
+                bytes[fixup.at + 1] = (byte) offset;
+            }
+        }
+
+        return bytes;
+    }
+
+    private void u2(int value) {
+        code.write(value >> 8);
+        code.write(value);
+    }
+
+    private void u4(int value) {
+        u2(value >> 16);
+        u2(value);
+    }
+}
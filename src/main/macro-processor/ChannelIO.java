@@ -0,0 +1,76 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * {@link GuestIO} over NIO channels, buffered both ways. Output goes out when the buffer
+ * can't take another value, on {@link #flush()}, and before input is waited for, so a prompt
+ * shows before the read that answers it; input is read a buffer at a time.
+ */
+class ChannelIO implements GuestIO {
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+    private static final int MAX_LINE = 6 + LINE_SEPARATOR.length; // "-32768"
+
+    private final ReadableByteChannel in;
+    private final WritableByteChannel out;
+    private final ByteBuffer input;
+    private final ByteBuffer output;
+    private final byte[] digits = new byte[6];
+
+    ChannelIO(ReadableByteChannel in, WritableByteChannel out, int bufferSize) {
+        if (bufferSize < MAX_LINE) {
+            throw new IllegalArgumentException("want a buffer of at least " + MAX_LINE + " bytes, given: " + bufferSize);
+        }
+
+        this.in = in;
+        this.out = out;
+        this.input = ByteBuffer.allocate(bufferSize).flip(); // starts empty
+        this.output = ByteBuffer.allocate(bufferSize);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!input.hasRemaining()) {
+            flush();
+            input.clear();
+            int read;
+            do {
+                read = in.read(input);
+            } while (read == 0);
+            input.flip();
+
+            if (read == -1) return -1;
+        }
+
+        return input.get() & 0xFF;
+    }
+
+    @Override
+    public void write(short value) throws IOException {
+        if (output.remaining() < MAX_LINE) flush();
+
+        // Integer.toString without the String
+        int v = value;
+        if (v < 0) {
+            output.put((byte) '-');
+            v = -v;
+        }
+
+        int length = 0;
+        do {
+            digits[length++] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+
+        while (length > 0) output.put(digits[--length]);
+        output.put(LINE_SEPARATOR);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        output.flip();
+        while (output.hasRemaining()) out.write(output);
+        output.clear();
+    }
+}
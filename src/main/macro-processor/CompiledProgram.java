@@ -0,0 +1,12 @@
+/**
+ * A guest program translated to JVM bytecode by {@link GuestCompiler}.
+ */
+interface CompiledProgram {
+    /**
+     * Runs from memory.ip until the program halts or reaches an instruction the compiler left
+     * to the interpreter; either way the registers are back in memory, with ip at that instruction.
+     *
+     * @return how many instructions ran
+     */
+    long run(Memory memory);
+}
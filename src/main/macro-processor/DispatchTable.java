@@ -0,0 +1,63 @@
+import java.util.Arrays;
+
+class DispatchTable {
+    private static final OpHandler NOP = (memory, arg) -> {
+    };
+
+    // indexed by the opcode byte written by Memory.storeOp
+    private final OpHandler[] handlers = new OpHandler[256];
+    private final Operand[] operands = new Operand[256];
+
+    DispatchTable() {
+        Arrays.fill(handlers, NOP);
+        Arrays.fill(operands, Operand.VALUE);
+
+        register(Program.ADDRR, Operand.VALUE, Memory::add);
+        register(Program.ADDRX, Operand.SYMBOL, Memory::add);
+        register(Program.ANDRX, Operand.SYMBOL, Memory::and);
+        register(Program.CALL, Operand.JUMP, Memory::callTo);
+        register(Program.CMPRX, Operand.SYMBOL, Memory::cmp);
+        register(Program.HLT, Operand.VALUE, (memory, arg) -> memory.hlt());
+        register(Program.JMPRX, Operand.JUMP, Memory::jmpTo);
+        register(Program.JNZ, Operand.JUMP, Memory::jnzTo);
+        register(Program.JP, Operand.JUMP, Memory::jpTo);
+        register(Program.JZ, Operand.JUMP, Memory::jzTo);
+        register(Program.POPF, Operand.VALUE, (memory, arg) -> memory.popf());
+        register(Program.PUSHF, Operand.VALUE, (memory, arg) -> memory.pushf());
+        register(Program.READ, Operand.SYMBOL, Memory::read);
+        register(Program.RET, Operand.VALUE, (memory, arg) -> memory.ret());
+        register(Program.STRRX, Operand.SYMBOL, Memory::storeAx);
+        register(Program.SUBRX, Operand.SYMBOL, Memory::sub);
+        register(Program.WRITE, Operand.SYMBOL, Memory::write);
+    }
+
+    /**
+     * Handler for the opcode; it expects its operand already resolved by {@link #operand(short)}.
+     */
+    OpHandler get(short opcode) {
+        return handlers[opcode & 0xFF];
+    }
+
+    Operand operand(short opcode) {
+        return operands[opcode & 0xFF];
+    }
+
+    private void register(OpCode op, Operand operand, OpHandler handler) {
+        handlers[op.opcode & 0xFF] = handler;
+        operands[op.opcode & 0xFF] = operand;
+    }
+
+    enum Operand {
+        VALUE,  // used as is
+        SYMBOL, // symbol offset, resolved to its absolute address
+        JUMP;   // symbol offset of a label, resolved to the ip it points to
+
+        short resolve(Memory memory, short arg) {
+            return switch (this) {
+                case VALUE -> arg;
+                case SYMBOL -> memory.symbolAddress(arg);
+                case JUMP -> memory.jumpTarget(memory.symbolAddress(arg));
+            };
+        }
+    }
+}
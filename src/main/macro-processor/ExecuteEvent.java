@@ -0,0 +1,14 @@
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("macroprocessor.Execute")
+@Label("Execute")
+@Category({"Macro Processor", "Pipeline"})
+class ExecuteEvent extends jdk.jfr.Event {
+    @Label("Dispatch")
+    String dispatch;
+
+    @Label("Instructions Executed")
+    long instructions;
+}
@@ -0,0 +1,72 @@
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of macro expansions, keyed by the macro and the arguments it was called with.
+ */
+class ExpansionCache {
+    private final int maxSize;
+    private final LinkedHashMap<Key, String[]> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    ExpansionCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, String[]> eldest) {
+                if (size() <= ExpansionCache.this.maxSize) return false;
+
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return the expanded lines, or null if the call isn't cached
+     */
+    String[] get(Macro macro, List<String> args) {
+        var lines = entries.get(new Key(macro, args));
+
+        if (lines == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+
+        return lines;
+    }
+
+    void put(Macro macro, List<String> args, String[] lines) {
+        if (maxSize > 0) entries.put(new Key(macro, args), lines);
+    }
+
+    /**
+     * Drops every expansion of the macro, for when it gets redefined.
+     */
+    void invalidate(Macro macro) {
+        entries.keySet().removeIf(key -> key.macro == macro);
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getMisses() {
+        return misses;
+    }
+
+    long getEvictions() {
+        return evictions;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private record Key(Macro macro, List<String> args) {
+    }
+}
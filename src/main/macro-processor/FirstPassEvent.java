@@ -0,0 +1,25 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * The first pass over a program, either over all of its lines at once or streamed in by an {@link AssemblerSink}.
+ * Streamed, it lasts as long as the macro processing feeding it, and only the assembling time went to the first pass.
+ */
+@Name("macroprocessor.FirstPass")
+@Label("First Pass")
+@Category({"Macro Processor", "Pipeline"})
+class FirstPassEvent extends jdk.jfr.Event {
+    @Label("Lines")
+    long lines;
+
+    @Label("Instructions")
+    long instructions;
+
+    @Label("Assembling Time")
+    @Description("Time spent assembling the lines, not waiting for them")
+    @Timespan(Timespan.NANOSECONDS)
+    long assemblingTime;
+}
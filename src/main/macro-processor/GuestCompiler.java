@@ -0,0 +1,280 @@
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Translates an {@link InstructionStream} into a hidden class implementing {@link CompiledProgram}.
+ * <p>
+ * Every instruction becomes a block of bytecode: jumps with their targets resolved become gotos,
+ * ax, dx and sr live in locals, and ret or an entry at any ip goes through a tableswitch on ip.
+ * The registers are written back to {@link Memory} before any call into it, so I/O, the guest stack
+ * and errors see the same state the interpreter would leave.
+ * <p>
+ * Instructions the compiler doesn't translate (operations the dispatch table leaves as no-ops,
+ * and/or/xor, out of range addresses or targets) end the compiled run with ip pointing at them,
+ * so the caller can interpret that one instruction and come back in.
+ * <p>
+ * Compiled classes are kept by code, so running the same program again reuses the class HotSpot
+ * already compiled instead of starting over in the bytecode interpreter.
+ */
+class GuestCompiler {
+    private static final String CLASS_NAME = "GuestCode";
+    private static final String MEMORY = "Memory";
+    private static final int MAX_CODE_SIZE = Short.MAX_VALUE; // branches take 16 bit offsets
+
+    // locals of run(Memory)
+    private static final int THIS = 0;
+    private static final int MEMORY_LOCAL = 1;
+    private static final int DATA = 2;
+    private static final int AX = 3;
+    private static final int DX = 4;
+    private static final int SR = 5;
+    private static final int STEPS = 6; // a long, takes 7 as well
+
+    private static final int CACHE_SIZE = 64;
+
+    // least recently used first; an empty value marks code too big to compile
+    private static final Map<Code, Optional<CompiledProgram>> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Code, Optional<CompiledProgram>> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    // what the generated class depends on
+    private record Code(short[] opcodes, short[] operands, int memorySize) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Code code && memorySize == code.memorySize
+                    && Arrays.equals(opcodes, code.opcodes) && Arrays.equals(operands, code.operands);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * Arrays.hashCode(opcodes) + Arrays.hashCode(operands)) + memorySize;
+        }
+    }
+
+    private final InstructionStream stream;
+    private final int memorySize;
+    private final ClassFileWriter classFile = new ClassFileWriter();
+    private final Bytecode code = new Bytecode(6, 8);
+    private final Bytecode.Label[] blocks;
+    private final Bytecode.Label dispatch = new Bytecode.Label();
+
+    private GuestCompiler(InstructionStream stream, int memorySize) {
+        this.stream = stream;
+        this.memorySize = memorySize;
+        this.blocks = new Bytecode.Label[stream.opcodes.length];
+        for (int i = 0; i < blocks.length; i++) blocks[i] = new Bytecode.Label();
+    }
+
+    /**
+     * @return the compiled program, or null when its code would be too big for a method and it has to be interpreted
+     */
+    static CompiledProgram compile(InstructionStream stream, Memory memory) {
+        var key = new Code(stream.opcodes.clone(), stream.operands.clone(), memory.data.length);
+
+        synchronized (cache) {
+            var cached = cache.get(key);
+            if (cached != null) return cached.orElse(null);
+        }
+
+        var compiled = define(stream, memory.data.length);
+        synchronized (cache) {
+            cache.put(key, Optional.ofNullable(compiled));
+        }
+        return compiled;
+    }
+
+    private static CompiledProgram define(InstructionStream stream, int memorySize) {
+        byte[] bytes = new GuestCompiler(stream, memorySize).classFile();
+        if (bytes == null) return null;
+
+        // anything the JVM rejects from here on is a bug in the generated code, not a reason to interpret
+        try {
+            var compiled = MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+            return (CompiledProgram) compiled.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new Error("can't instantiate compiled guest code", e);
+        }
+    }
+
+    // null when the code is too big for branches to reach across it
+    private byte[] classFile() {
+        var constructor = new Bytecode(1, 1)
+                .local(Bytecode.ALOAD, THIS)
+                .member(Bytecode.INVOKESPECIAL, classFile.methodRef("java/lang/Object", "<init>", "()V"))
+                .op(Bytecode.RETURN);
+        classFile.method(ClassFileWriter.ACC_PUBLIC, "<init>", "()V", constructor);
+
+        prologue();
+        for (int pc = 0; pc < blocks.length; pc++) {
+            code.place(blocks[pc]);
+            instruction(pc);
+        }
+        if (code.size() > MAX_CODE_SIZE) return null;
+
+        classFile.method(ClassFileWriter.ACC_PUBLIC, "run", "(LMemory;)J", code);
+        return classFile.toByteArray(
+                ClassFileWriter.ACC_FINAL | ClassFileWriter.ACC_SUPER, CLASS_NAME, "java/lang/Object", "CompiledProgram"
+        );
+    }
+
+    // loads the registers into locals, then enters at memory.ip
+    private void prologue() {
+        code.local(Bytecode.ALOAD, MEMORY_LOCAL)
+                .member(Bytecode.GETFIELD, classFile.fieldRef(MEMORY, "data", "[S"))
+                .local(Bytecode.ASTORE, DATA);
+        loadRegister("getAx", AX);
+        loadRegister("getDx", DX);
+        loadRegister("getSr", SR);
+        code.op(Bytecode.LCONST_0).local(Bytecode.LSTORE, STEPS);
+
+        var outside = new Bytecode.Label();
+        code.place(dispatch)
+                .local(Bytecode.ALOAD, MEMORY_LOCAL)
+                .member(Bytecode.GETFIELD, classFile.fieldRef(MEMORY, "ip", "S"))
+                .op(Bytecode.ICONST_1)
+                .op(Bytecode.ISHR)
+                .tableswitch(outside, blocks);
+
+        // ip outside the program: leave it to the interpreter, which fails the same way it always did
+        code.place(outside);
+        storeRegisters();
+        exit();
+    }
+
+    private void instruction(int pc) {
+        short opcode = stream.opcodes[pc];
+        short operand = stream.operands[pc];
+        short next = (short) ((pc + 1) * 2);
+
+        if (!translates(opcode, operand)) {
+            interpret(pc);
+            return;
+        }
+
+        step();
+        if (opcode == Program.ADDRR.opcode || opcode == Program.ADDRX.opcode) {
+            arithmetic(operand, Bytecode.IADD);
+        } else if (opcode == Program.SUBRX.opcode) {
+            arithmetic(operand, Bytecode.ISUB);
+        } else if (opcode == Program.STRRX.opcode) {
+            code.local(Bytecode.ALOAD, DATA).sipush(operand).local(Bytecode.ILOAD, AX).op(Bytecode.SASTORE);
+        } else if (opcode == Program.CMPRX.opcode) {
+            code.local(Bytecode.ALOAD, DATA).sipush(operand).op(Bytecode.SALOAD).local(Bytecode.ISTORE, DX)
+                    .local(Bytecode.ILOAD, SR)
+                    .local(Bytecode.ILOAD, AX)
+                    .local(Bytecode.ILOAD, DX)
+                    .member(Bytecode.INVOKESTATIC, classFile.methodRef(MEMORY, "compareFlags", "(SSS)S"))
+                    .local(Bytecode.ISTORE, SR);
+        } else if (opcode == Program.JMPRX.opcode) {
+            code.branch(Bytecode.GOTO, blocks[operand / 2]);
+        } else if (opcode == Program.JZ.opcode || opcode == Program.JNZ.opcode || opcode == Program.JP.opcode) {
+            code.local(Bytecode.ILOAD, SR)
+                    .sipush(opcode == Program.JP.opcode ? Memory.SIGN : Memory.ZERO)
+                    .op(Bytecode.IAND)
+                    .branch(opcode == Program.JZ.opcode ? Bytecode.IFNE : Bytecode.IFEQ, blocks[operand / 2]);
+        } else if (opcode == Program.CALL.opcode) {
+            sync(next);
+            code.local(Bytecode.ALOAD, MEMORY_LOCAL)
+                    .sipush(operand)
+                    .member(Bytecode.INVOKEVIRTUAL, classFile.methodRef(MEMORY, "callTo", "(S)V"))
+                    .branch(Bytecode.GOTO, blocks[operand / 2]);
+        } else if (opcode == Program.RET.opcode) {
+            sync(next);
+            invoke("ret", "()V");
+            code.branch(Bytecode.GOTO, dispatch);
+        } else if (opcode == Program.PUSHF.opcode) {
+            sync(next);
+            invoke("pushf", "()V");
+        } else if (opcode == Program.POPF.opcode) {
+            sync(next);
+            invoke("popf", "()V");
+            loadRegister("getSr", SR);
+        } else if (opcode == Program.WRITE.opcode || opcode == Program.READ.opcode) {
+            sync(next);
+            code.local(Bytecode.ALOAD, MEMORY_LOCAL)
+                    .sipush(operand)
+                    .member(Bytecode.INVOKEVIRTUAL, classFile.methodRef(
+                            MEMORY, opcode == Program.WRITE.opcode ? "write" : "read", "(S)V"
+                    ));
+        } else if (opcode == Program.HLT.opcode) {
+            sync(next);
+            invoke("hlt", "()V");
+            exit();
+        }
+    }
+
+    private boolean translates(short opcode, short operand) {
+        if (opcode == Program.ADDRR.opcode || opcode == Program.ADDRX.opcode || opcode == Program.SUBRX.opcode
+                || opcode == Program.STRRX.opcode || opcode == Program.CMPRX.opcode) {
+            return isAddress(operand);
+        }
+        if (opcode == Program.JMPRX.opcode || opcode == Program.JZ.opcode || opcode == Program.JNZ.opcode
+                || opcode == Program.JP.opcode || opcode == Program.CALL.opcode) {
+            return isTarget(operand);
+        }
+        return opcode == Program.RET.opcode || opcode == Program.PUSHF.opcode || opcode == Program.POPF.opcode
+                || opcode == Program.WRITE.opcode || opcode == Program.READ.opcode || opcode == Program.HLT.opcode;
+    }
+
+    private void arithmetic(short address, int operation) {
+        code.local(Bytecode.ILOAD, AX)
+                .local(Bytecode.ALOAD, DATA).sipush(address).op(Bytecode.SALOAD)
+                .op(operation)
+                .op(Bytecode.I2S)
+                .local(Bytecode.ISTORE, AX);
+    }
+
+    // hands the instruction at pc to the interpreter
+    private void interpret(int pc) {
+        sync((short) (pc * 2));
+        exit();
+    }
+
+    private void step() {
+        code.local(Bytecode.LLOAD, STEPS).op(Bytecode.LCONST_1).op(Bytecode.LADD).local(Bytecode.LSTORE, STEPS);
+    }
+
+    private void sync(short ip) {
+        code.local(Bytecode.ALOAD, MEMORY_LOCAL)
+                .sipush(ip)
+                .member(Bytecode.PUTFIELD, classFile.fieldRef(MEMORY, "ip", "S"));
+        storeRegisters();
+    }
+
+    private void storeRegisters() {
+        code.local(Bytecode.ALOAD, MEMORY_LOCAL)
+                .local(Bytecode.ILOAD, AX)
+                .local(Bytecode.ILOAD, DX)
+                .local(Bytecode.ILOAD, SR)
+                .member(Bytecode.INVOKEVIRTUAL, classFile.methodRef(MEMORY, "storeRegisters", "(SSS)V"));
+    }
+
+    private void loadRegister(String getter, int local) {
+        code.local(Bytecode.ALOAD, MEMORY_LOCAL)
+                .member(Bytecode.INVOKEVIRTUAL, classFile.methodRef(MEMORY, getter, "()S"))
+                .local(Bytecode.ISTORE, local);
+    }
+
+    private void invoke(String method, String descriptor) {
+        code.local(Bytecode.ALOAD, MEMORY_LOCAL)
+                .member(Bytecode.INVOKEVIRTUAL, classFile.methodRef(MEMORY, method, descriptor));
+    }
+
+    private void exit() {
+        code.local(Bytecode.LLOAD, STEPS).op(Bytecode.LRETURN);
+    }
+
+    private boolean isAddress(short address) {
+        return address >= 0 && address < memorySize;
+    }
+
+    private boolean isTarget(short ip) {
+        return ip >= 0 && ip % 2 == 0 && ip / 2 < blocks.length;
+    }
+}
@@ -0,0 +1,92 @@
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Where a guest program's READ instructions take characters from and its WRITE instructions
+ * put numbers to. Output may be held back until {@link #flush()}, which {@link Memory} calls on halt,
+ * but not past a read that has to wait for input.
+ * Closing flushes, and closes only what the factory method opened itself.
+ */
+interface GuestIO extends Closeable {
+    int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * @return the next byte of input, -1 at its end
+     */
+    int read() throws IOException;
+
+    /**
+     * Writes the value in decimal, then a line separator.
+     */
+    void write(short value) throws IOException;
+
+    void flush() throws IOException;
+
+    @Override
+    default void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * The process's standard input and output, through their file descriptors instead of System.in and System.out.
+     */
+    static GuestIO console() {
+        return of(standardInput(), standardOutput());
+    }
+
+    static GuestIO of(InputStream in, OutputStream out) {
+        return new ChannelIO(Channels.newChannel(in), Channels.newChannel(out), DEFAULT_BUFFER_SIZE) {
+            @Override
+            public void flush() throws IOException {
+                super.flush();
+                out.flush();
+            }
+        };
+    }
+
+    static GuestIO of(ReadableByteChannel in, WritableByteChannel out) {
+        return new ChannelIO(in, out, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Reads the input file and replaces the output file; either may be null to use the console's.
+     */
+    static GuestIO files(Path in, Path out) throws IOException {
+        var input = in == null ? standardInput() : FileChannel.open(in, StandardOpenOption.READ);
+        var output = out == null ? standardOutput() : FileChannel.open(
+                out, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING
+        );
+
+        return new ChannelIO(input, output, DEFAULT_BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    flush();
+                } finally {
+                    // the console's descriptors stay open for the rest of the process
+                    if (in != null) input.close();
+                    if (out != null) output.close();
+                }
+            }
+        };
+    }
+
+    private static FileChannel standardInput() {
+        return new FileInputStream(FileDescriptor.in).getChannel();
+    }
+
+    private static FileChannel standardOutput() {
+        return new FileOutputStream(FileDescriptor.out).getChannel();
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * Instructions loaded in memory decoded into flat arrays, one entry per instruction,
+ * so the interpreter loop runs without decoding or allocating anything per step.
+ */
+class InstructionStream {
+    final OpHandler[] handlers;
+    final short[] operands;
+    final short[] opcodes;
+
+    private InstructionStream(OpHandler[] handlers, short[] operands, short[] opcodes) {
+        this.handlers = handlers;
+        this.operands = operands;
+        this.opcodes = opcodes;
+    }
+
+    static InstructionStream decode(Memory memory, DispatchTable table) {
+        int size = (memory.codeEnd - memory.opStart) / 2;
+
+        // one extra slot: falling off the end reads an empty (hlt) instruction
+        var handlers = new OpHandler[size + 1];
+        var operands = new short[size + 1];
+        var opcodes = new short[size + 1];
+
+        for (int i = 0; i <= size; i++) {
+            short address = (short) (memory.opStart + i * 2);
+            short opcode = memory.data[address];
+            short arg = memory.data[address + 1];
+
+            opcodes[i] = opcode;
+            handlers[i] = table.get(opcode);
+            operands[i] = table.operand(opcode).resolve(memory, arg);
+        }
+
+        return new InstructionStream(handlers, operands, opcodes);
+    }
+}
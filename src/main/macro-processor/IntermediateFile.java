@@ -1,11 +1,10 @@
-import java.util.ArrayList;
 import java.util.List;
 
 public class IntermediateFile {
-    ArrayList<SymbolTableEntry> symbolTable;
+    SymbolTable symbolTable;
     List<Instruction> instructions;
 
-    public IntermediateFile(ArrayList<SymbolTableEntry> symbolTable, List<Instruction> instructions) {
+    public IntermediateFile(SymbolTable symbolTable, List<Instruction> instructions) {
         this.symbolTable = symbolTable;
         this.instructions = instructions;
     }
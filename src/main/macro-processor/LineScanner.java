@@ -0,0 +1,189 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single pass scanner for source lines. While reading a line once it detects the macro
+ * keywords, finds the word a macro call would start with, and builds the cleaned line
+ * (trimmed, lower case, whitespace collapsed) noting where its fields start and end,
+ * so the {@link ParsedLine} can be cut out of it without scanning again.
+ * <p>
+ * The scanner is reused from line to line and only holds the state of the last one.
+ */
+class LineScanner {
+    private static final char[] MACRO_DEFINITION = Token.MCDEFN.toString().toCharArray();
+    private static final char[] MACRO_END = Token.MCEND.toString().toCharArray();
+
+    private final StringBuilder cleaned = new StringBuilder();
+    private int[] commas = new int[8];
+    private int commaCount;
+    private int semicolon;
+    private int colon;
+    private int firstSpace; // separating the instruction from its args
+    private boolean macroDefinition;
+    private boolean macroEnd;
+    private String firstWord;
+
+    /**
+     * Parses a whole source at once, leaving out blank lines, for callers that already hold it in memory.
+     */
+    static List<ParsedLine> parse(List<String> source) {
+        var scanner = new LineScanner();
+        var lines = new ArrayList<ParsedLine>(source.size());
+
+        for (var line : source) {
+            if (!scanner.scan(line).isBlank()) lines.add(scanner.parsedLine());
+        }
+
+        return lines;
+    }
+
+    LineScanner scan(String line) {
+        cleaned.setLength(0);
+        commaCount = 0;
+        semicolon = -1;
+        colon = -1;
+        firstSpace = -1;
+
+        int definitionMatch = 0;
+        int endMatch = 0;
+        boolean foundDefinition = false;
+        boolean foundEnd = false;
+        int firstWordEnd = -1;
+        boolean pendingSpace = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+
+            definitionMatch = match(MACRO_DEFINITION, definitionMatch, c);
+            if (definitionMatch == MACRO_DEFINITION.length) foundDefinition = true;
+            endMatch = match(MACRO_END, endMatch, c);
+            if (endMatch == MACRO_END.length) foundEnd = true;
+
+            if (c == ' ' && firstWordEnd == -1) firstWordEnd = i;
+
+            if (Character.isWhitespace(c)) {
+                pendingSpace = cleaned.length() > 0;
+                continue;
+            }
+
+            if (pendingSpace) {
+                if (semicolon == -1 && firstSpace == -1 && cleaned.length() != colon + 1) {
+                    firstSpace = cleaned.length();
+                }
+                cleaned.append(' ');
+                pendingSpace = false;
+            }
+
+            if (semicolon == -1) {
+                if (c == ';') {
+                    semicolon = cleaned.length();
+                } else if (c == ':' && colon == -1) {
+                    colon = cleaned.length();
+                    firstSpace = -1;
+                    commaCount = 0;
+                } else if (c == ',' && firstSpace != -1) {
+                    addComma(cleaned.length());
+                }
+            }
+
+            cleaned.append(Character.toLowerCase(c));
+        }
+
+        macroDefinition = foundDefinition;
+        macroEnd = foundEnd;
+        firstWord = firstWordEnd == -1 ? line : line.substring(0, firstWordEnd);
+
+        return this;
+    }
+
+    boolean isBlank() {
+        return cleaned.length() == 0;
+    }
+
+    boolean isMacroDefinition() {
+        return macroDefinition;
+    }
+
+    boolean isMacroEnd() {
+        return macroEnd;
+    }
+
+    /**
+     * The line up to its first space, as in the raw line, which is where a macro call has the macro name.
+     */
+    String firstWord() {
+        return firstWord;
+    }
+
+    String cleanedLine() {
+        return cleaned.toString();
+    }
+
+    ParsedLine parsedLine() {
+        var parsedLine = new ParsedLine();
+        int end = cleaned.length();
+
+        if (semicolon != -1) {
+            parsedLine.comment = field(semicolon + 1, end);
+            end = semicolon;
+        }
+
+        int start = 0;
+        if (colon != -1) {
+            parsedLine.label = field(0, colon);
+            start = colon + 1;
+        }
+
+        end = trimEnd(end);
+        if (firstSpace == -1 || firstSpace >= end) {
+            parsedLine.instruction = field(start, end);
+            return parsedLine;
+        }
+
+        parsedLine.instruction = field(start, firstSpace);
+
+        // like String.split, trailing args with nothing at all between their commas are dropped
+        int argCount = 0;
+        int argStart = firstSpace;
+        for (int i = 0; i <= commaCount; i++) {
+            int argEnd = i < commaCount ? commas[i] : end;
+            if (argEnd > argStart) argCount = i + 1;
+            argStart = argEnd + 1;
+        }
+
+        argStart = firstSpace + 1;
+        for (int i = 0; i < argCount; i++) {
+            int argEnd = i < commaCount ? commas[i] : end;
+            parsedLine.args.add(field(argStart, argEnd));
+            argStart = argEnd + 1;
+        }
+
+        return parsedLine;
+    }
+
+    private int match(char[] keyword, int matched, char c) {
+        if (matched == keyword.length) matched = 0;
+        if (keyword[matched] == c) return matched + 1;
+        return keyword[0] == c ? 1 : 0;
+    }
+
+    private void addComma(int index) {
+        if (commaCount == commas.length) {
+            var grown = new int[commas.length * 2];
+            System.arraycopy(commas, 0, grown, 0, commas.length);
+            commas = grown;
+        }
+        commas[commaCount++] = index;
+    }
+
+    private String field(int start, int end) {
+        while (start < end && cleaned.charAt(start) == ' ') start++;
+        while (end > start && cleaned.charAt(end - 1) == ' ') end--;
+        return cleaned.substring(start, end);
+    }
+
+    private int trimEnd(int end) {
+        while (end > 0 && cleaned.charAt(end - 1) == ' ') end--;
+        return end;
+    }
+}
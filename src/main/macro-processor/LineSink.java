@@ -0,0 +1,51 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Destination of the lines produced by the {@link MacroProcessor}, one line at a time.
+ */
+@FunctionalInterface
+interface LineSink extends Closeable {
+    void accept(String line) throws IOException;
+
+    /**
+     * Same as {@link #accept(String)}, for a line the macro processor has already scanned.
+     * Sinks that parse their lines can take the result from the scanner instead of scanning again.
+     */
+    default void accept(String line, LineScanner scanned) throws IOException {
+        accept(line);
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+
+    static LineSink discard() {
+        return line -> {
+        };
+    }
+
+    static LineSink toList(List<String> lines) {
+        return lines::add;
+    }
+
+    static LineSink toFile(String fileName) throws IOException {
+        var writer = new BufferedWriter(new FileWriter(fileName));
+
+        return new LineSink() {
+            @Override
+            public void accept(String line) throws IOException {
+                writer.write(line);
+                writer.newLine();
+            }
+
+            @Override
+            public void close() throws IOException {
+                writer.close();
+            }
+        };
+    }
+}
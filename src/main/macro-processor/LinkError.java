@@ -0,0 +1,7 @@
+class LinkError extends Error {
+    private static final long serialVersionUID = 1L;
+
+    public LinkError(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,90 @@
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Merges separately assembled programs into one, laying out their code one after the other.
+ * <p>
+ * Symbols are global: a name refers to the same symbol in every program, and it can be defined
+ * in at most one of them. Labels are moved by the position of their program's code, and symbol
+ * operands are renumbered to the offsets of the merged symbol table. A jump or call to a label no
+ * program defines fails the link; other symbols left undefined are storage, as in a single program.
+ */
+class Linker {
+    private final NameTable names = new NameTable();
+    private final SymbolTable symbolTable = new SymbolTable();
+    private final List<Instruction> instructions = new ArrayList<>();
+
+    static IntermediateFile link(List<IntermediateFile> programs) {
+        var linker = new Linker();
+        programs.forEach(linker::add);
+        linker.checkJumpTargets();
+        return new IntermediateFile(linker.symbolTable, linker.instructions);
+    }
+
+    // the value of an undefined symbol came from the program referencing it, code of another program once linked
+    private void checkJumpTargets() {
+        var undefined = new LinkedHashSet<String>();
+
+        for (var instruction : instructions) {
+            if (!isJump(instruction.op)) continue;
+
+            var target = symbolTable.atOffset(instruction.args.get(0));
+            if (target.isUndefined()) undefined.add(target.name);
+        }
+
+        if (!undefined.isEmpty()) throw new LinkError("undefined labels: " + String.join(", ", undefined));
+    }
+
+    private static boolean isJump(OpCode op) {
+        return op == Program.JMPRX || op == Program.JZ || op == Program.JNZ || op == Program.JP || op == Program.CALL;
+    }
+
+    private void add(IntermediateFile program) {
+        short codeBase = (short) instructions.size();
+        var relocation = new short[program.symbolTable.size()];
+
+        short localOffset = 0;
+        for (var symbol : program.symbolTable) {
+            relocation[localOffset++] = symbolTable.offsetOf(merge(symbol, codeBase));
+        }
+
+        for (var instruction : program.instructions) {
+            var relocated = new Instruction();
+            relocated.op = instruction.op;
+            relocated.args.addAll(instruction.args);
+
+            if (instruction.op.type == OpCode.Type.RegisterIndex) {
+                relocated.args.set(0, relocation[instruction.args.get(0)]);
+            }
+
+            instructions.add(relocated);
+        }
+    }
+
+    private SymbolTableEntry merge(SymbolTableEntry symbol, short codeBase) {
+        int id = names.intern(symbol.name);
+        var merged = symbolTable.get(id);
+        short value = symbol.isLabel() ? (short) (symbol.getValue() + codeBase) : symbol.getValue();
+
+        if (merged == null) {
+            merged = new SymbolTableEntry(id, symbol.name, value);
+            define(merged, symbol);
+            symbolTable.put(merged);
+        } else if (!symbol.isUndefined()) {
+            if (!merged.isUndefined()) throw new LinkError("symbol defined more than once: " + symbol.name);
+
+            merged.setValue(value);
+            define(merged, symbol);
+        }
+
+        return merged;
+    }
+
+    private void define(SymbolTableEntry merged, SymbolTableEntry symbol) {
+        if (symbol.isUndefined()) return;
+
+        merged.setDefined();
+        if (symbol.isLabel()) merged.setLabel();
+    }
+}
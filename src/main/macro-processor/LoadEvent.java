@@ -0,0 +1,14 @@
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("macroprocessor.Load")
+@Label("Load Into Memory")
+@Category({"Macro Processor", "Pipeline"})
+class LoadEvent extends jdk.jfr.Event {
+    @Label("Symbols")
+    long symbols;
+
+    @Label("Instructions")
+    long instructions;
+}
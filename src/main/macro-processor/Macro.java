@@ -1,33 +1,86 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
+/**
+ * A macro body compiled into a template: literal text with parameter slots in between.
+ * Expanding it appends literals[0], args[slots[0]], literals[1], ... in a single pass.
+ */
 public class Macro {
     private final String name;
-    private final List<String> params;
-    private final List<String> body;
+    private final int arity;
+    private final String[] literals;
+    private final int[] slots;
+
+    public Macro(String name, int arity, String[] literals, int[] slots) {
+        if (literals.length != slots.length + 1) {
+            throw new IllegalArgumentException(
+                    "want " + (slots.length + 1) + " literals around " + slots.length + " slots, given: " + literals.length
+            );
+        }
 
-    public Macro(String name, List<String> args, List<String> body) {
         this.name = name;
-        this.params = args;
-        this.body = body;
+        this.arity = arity;
+        this.literals = literals;
+        this.slots = slots;
     }
 
     public String getName() {
         return name;
     }
 
+    int getArity() {
+        return arity;
+    }
+
+    String[] getLiterals() {
+        return literals;
+    }
+
+    int[] getSlots() {
+        return slots;
+    }
+
     public String expand(List<String> args) {
-        if (params.size() != args.size()) {
+        var out = new StringBuilder();
+
+        try {
+            expand(args, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringBuilder doesn't throw
+        }
+
+        return out.toString();
+    }
+
+    public void expand(List<String> args, Appendable out) throws IOException {
+        if (arity != args.size()) {
             throw new IllegalArgumentException(
-                    "want a list of size " + params.size() + ", given: " + String.join(",", args)
+                    "want a list of size " + arity + ", given: " + String.join(",", args)
             );
         }
 
-        var out = String.join("\n", body);
+        var event = new MacroExpandEvent();
+        event.begin();
+
+        out.append(literals[0]);
+        for (int i = 0; i < slots.length; i++) {
+            out.append(args.get(slots[i]));
+            out.append(literals[i + 1]);
+        }
 
-        for (int i = 0; i < params.size(); i++) {
-            out = out.replaceAll(params.get(i), args.get(i));
+        event.end();
+        if (event.shouldCommit()) {
+            event.macro = name;
+            event.outputLength = expandedLength(args);
+            event.commit();
         }
+    }
 
-        return out;
+    private int expandedLength(List<String> args) {
+        int length = 0;
+        for (var literal : literals) length += literal.length();
+        for (int slot : slots) length += args.get(slot).length();
+        return length;
     }
 }
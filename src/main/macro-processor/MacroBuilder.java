@@ -17,7 +17,37 @@ public class MacroBuilder {
     }
 
     Macro build() {
-        return new Macro(this.name, this.args, this.lines);
+        var body = String.join("\n", lines);
+        var literals = new ArrayList<String>();
+        var slots = new ArrayList<Integer>();
+
+        // only whole words are parameters, so a parameter named "a" leaves "ax" alone
+        int literalStart = 0;
+        int i = 0;
+        while (i < body.length()) {
+            if (!isWordChar(body.charAt(i))) {
+                i++;
+                continue;
+            }
+
+            int wordStart = i;
+            while (i < body.length() && isWordChar(body.charAt(i))) i++;
+
+            int slot = args.indexOf(body.substring(wordStart, i));
+            if (slot == -1) continue;
+
+            literals.add(body.substring(literalStart, wordStart));
+            slots.add(slot);
+            literalStart = i;
+        }
+        literals.add(body.substring(literalStart));
+
+        return new Macro(
+                this.name,
+                this.args.size(),
+                literals.toArray(String[]::new),
+                slots.stream().mapToInt(Integer::intValue).toArray()
+        );
     }
 
     private void parseDefinition(String line) {
@@ -45,6 +75,10 @@ public class MacroBuilder {
                 .toList();
     }
 
+    private boolean isWordChar(char c) {
+        return !Character.isWhitespace(c) && c != ',' && c != ';' && c != ':';
+    }
+
     private String removeSubsequentSpaces(String str) {
         return str.replaceAll("\\s+", " ");
     }
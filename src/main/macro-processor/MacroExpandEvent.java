@@ -0,0 +1,19 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A single {@link Macro#expand} call; calls answered by the expansion cache don't get one.
+ */
+@Name("macroprocessor.MacroExpand")
+@Label("Macro Expansion")
+@Category({"Macro Processor", "Macros"})
+class MacroExpandEvent extends jdk.jfr.Event {
+    @Label("Macro")
+    String macro;
+
+    @Label("Output Length")
+    @Description("Characters written")
+    long outputLength;
+}
@@ -0,0 +1,323 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Macros compiled ahead of time into a file that is memory-mapped read-only, so one instance can be
+ * shared by every {@link MacroProcessor}. Opening it reads the header only: names are found by binary
+ * search in the index, and a macro body is decoded the first time its name is looked up. Only the index
+ * entries a lookup touches are bounds-checked; {@link #verify()} checks the hash and the whole index.
+ * Names that aren't in the library are remembered too, up to a limit, since the macro processor asks for
+ * the first word of every line.
+ * <p>
+ * Layout, big endian:
+ * <pre>
+ * int   magic "MPML"
+ * short version
+ * short reserved
+ * int   macro count
+ * byte  hash[32], SHA-256 of everything after the header
+ * index[macro count], sorted by the UTF-8 bytes of the names:
+ *     int nameOffset, short nameLength, short arity, int bodyOffset, int bodyLength
+ * names, UTF-8
+ * bodies: short slot count, short slots[slot count], then slot count + 1 literals as int length, UTF-8 bytes
+ * </pre>
+ * Offsets are from the start of the file.
+ */
+class MacroLibrary {
+    static final int MAGIC = 0x4D504D4C; // MPML
+    static final short VERSION = 1;
+    private static final int HASH_SIZE = 32;
+    private static final int HEADER_SIZE = 12 + HASH_SIZE;
+    private static final int INDEX_ENTRY_SIZE = 16;
+    private static final int MAX_REMEMBERED_MISSES = 4096;
+    private static final Macro ABSENT = new Macro("", 0, new String[]{""}, new int[0]); // a name the library lacks
+
+    private final Path path;
+    private final ByteBuffer buffer;
+    private final int count;
+    private final String hash;
+    private final ConcurrentHashMap<String, Macro> decoded = new ConcurrentHashMap<>(); // or ABSENT
+    private final AtomicInteger misses = new AtomicInteger();
+
+    private MacroLibrary(Path path, ByteBuffer buffer, int count, String hash) {
+        this.path = path;
+        this.buffer = buffer;
+        this.count = count;
+        this.hash = hash;
+    }
+
+    /**
+     * Compiles the macros defined in the source files, a later definition replacing an earlier one.
+     * Whatever else the files hold is ignored.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: MacroLibrary <library> <source>...");
+            System.exit(2);
+        }
+
+        var macros = new LinkedHashMap<String, Macro>();
+        for (int i = 1; i < args.length; i++) {
+            var processor = new MacroProcessor(args[i]);
+            processor.process(LineSink.discard());
+            for (var macro : processor.macros()) macros.put(macro.getName(), macro);
+        }
+
+        var path = Path.of(args[0]);
+        write(macros.values(), path);
+        open(path).verify();
+    }
+
+    static void write(Collection<Macro> macros, Path path) throws IOException {
+        var sorted = new ArrayList<>(macros);
+        sorted.sort((a, b) -> Arrays.compareUnsigned(utf8(a.getName()), utf8(b.getName())));
+
+        var names = new ByteArrayOutputStream();
+        var bodies = new ByteArrayOutputStream();
+        var bodiesOut = new DataOutputStream(bodies);
+        var nameOffsets = new int[sorted.size()];
+        var bodyOffsets = new int[sorted.size()];
+        for (int i = 0; i < sorted.size(); i++) {
+            nameOffsets[i] = names.size();
+            names.write(utf8(sorted.get(i).getName()));
+
+            bodyOffsets[i] = bodies.size();
+            writeBody(sorted.get(i), bodiesOut);
+        }
+
+        int namesStart = HEADER_SIZE + sorted.size() * INDEX_ENTRY_SIZE;
+        int bodiesStart = namesStart + names.size();
+
+        var content = new ByteArrayOutputStream();
+        var out = new DataOutputStream(content);
+        for (int i = 0; i < sorted.size(); i++) {
+            var macro = sorted.get(i);
+            int bodyEnd = i + 1 < sorted.size() ? bodyOffsets[i + 1] : bodies.size();
+
+            out.writeInt(namesStart + nameOffsets[i]);
+            out.writeShort(utf8(macro.getName()).length);
+            out.writeShort(macro.getArity());
+            out.writeInt(bodiesStart + bodyOffsets[i]);
+            out.writeInt(bodyEnd - bodyOffsets[i]);
+        }
+        names.writeTo(out);
+        bodies.writeTo(out);
+        out.flush();
+
+        try (var file = new DataOutputStream(Files.newOutputStream(path))) {
+            file.writeInt(MAGIC);
+            file.writeShort(VERSION);
+            file.writeShort(0);
+            file.writeInt(sorted.size());
+            file.write(sha256(content.toByteArray()));
+            content.writeTo(file);
+        }
+    }
+
+    static MacroLibrary open(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.BIG_ENDIAN);
+
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException(path + " is not a macro library");
+            }
+
+            short version = buffer.getShort(4);
+            if (version != VERSION) {
+                throw new IOException(path + " has macro library version " + version + ", want " + VERSION);
+            }
+
+            int count = buffer.getInt(8);
+            if (count < 0 || buffer.limit() < HEADER_SIZE + (long) count * INDEX_ENTRY_SIZE) {
+                throw new IOException(path + " is truncated");
+            }
+
+            var hash = new byte[HASH_SIZE];
+            buffer.get(12, hash);
+            return new MacroLibrary(path, buffer, count, HexFormat.of().formatHex(hash));
+        }
+    }
+
+    /**
+     * Reads the whole library, checking its content against the hash and every index entry against the file.
+     * Takes about a millisecond per MB, which is why {@link #open(Path)} doesn't.
+     */
+    void verify() throws IOException {
+        var content = buffer.slice(HEADER_SIZE, buffer.limit() - HEADER_SIZE);
+        if (!hash.equals(HexFormat.of().formatHex(sha256(content)))) {
+            throw new IOException(path + " is corrupt: its content doesn't match its hash");
+        }
+
+        for (int entry = HEADER_SIZE; entry < indexEnd(); entry += INDEX_ENTRY_SIZE) {
+            checkEntry(entry);
+            decode("", entry);
+        }
+    }
+
+    private int indexEnd() {
+        return HEADER_SIZE + count * INDEX_ENTRY_SIZE;
+    }
+
+    // names and bodies have to lie past the index and within the file
+    private void checkEntry(int entry) throws IOException {
+        long nameOffset = buffer.getInt(entry);
+        long nameLength = buffer.getShort(entry + 4) & 0xFFFF;
+        long bodyOffset = buffer.getInt(entry + 8);
+        long bodyLength = buffer.getInt(entry + 12);
+
+        if (nameOffset < indexEnd() || nameOffset + nameLength > buffer.limit()
+                || buffer.getShort(entry + 6) < 0
+                || bodyOffset < indexEnd() || bodyLength < 2 || bodyOffset + bodyLength > buffer.limit()) {
+            throw corrupt(entry);
+        }
+    }
+
+    private IOException corrupt(int entry) {
+        return new IOException(path + " is corrupt: index entry " + (entry - HEADER_SIZE) / INDEX_ENTRY_SIZE + " is out of bounds");
+    }
+
+    /**
+     * Hash of the macros in the library, for caches of anything assembled with it.
+     */
+    String hash() {
+        return hash;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * @return the macro, decoded on the first call for its name, or null if the library doesn't have it
+     * @throws UncheckedIOException if the part of the library the lookup reads is corrupt
+     */
+    Macro get(String name) {
+        var macro = decoded.get(name);
+        if (macro != null) return macro == ABSENT ? null : macro;
+
+        try {
+            int entry = find(utf8(name));
+            if (entry == -1) {
+                if (misses.get() < MAX_REMEMBERED_MISSES && decoded.putIfAbsent(name, ABSENT) == null) {
+                    misses.incrementAndGet();
+                }
+                return null;
+            }
+
+            macro = decode(name, entry);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        var previous = decoded.putIfAbsent(name, macro);
+        return previous != null ? previous : macro;
+    }
+
+    // index entry position of the name, by binary search; -1 if absent
+    private int find(byte[] name) throws IOException {
+        int low = 0;
+        int high = count - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = HEADER_SIZE + middle * INDEX_ENTRY_SIZE;
+            checkEntry(entry);
+            int comparison = compareName(entry, name);
+
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return entry;
+            }
+        }
+
+        return -1;
+    }
+
+    private int compareName(int entry, byte[] name) {
+        int offset = buffer.getInt(entry);
+        int length = buffer.getShort(entry + 4) & 0xFFFF;
+
+        for (int i = 0; i < Math.min(length, name.length); i++) {
+            int comparison = Integer.compare(buffer.get(offset + i) & 0xFF, name[i] & 0xFF);
+            if (comparison != 0) return comparison;
+        }
+        return Integer.compare(length, name.length);
+    }
+
+    // the entry must have passed checkEntry; the body is checked against its length as it is read
+    private Macro decode(String name, int entry) throws IOException {
+        int arity = buffer.getShort(entry + 6);
+        int position = buffer.getInt(entry + 8);
+        long end = (long) position + buffer.getInt(entry + 12);
+
+        int slotCount = buffer.getShort(position);
+        position += 2;
+        if (slotCount < 0 || position + 2L * slotCount > end) throw corrupt(entry);
+        var slots = new int[slotCount];
+        for (int i = 0; i < slotCount; i++, position += 2) slots[i] = buffer.getShort(position);
+
+        var literals = new String[slotCount + 1];
+        for (int i = 0; i < literals.length; i++) {
+            if (position + 4L > end) throw corrupt(entry);
+            int length = buffer.getInt(position);
+            if (length < 0 || position + 4L + length > end) throw corrupt(entry);
+            var bytes = new byte[length];
+            buffer.get(position + 4, bytes);
+            literals[i] = new String(bytes, StandardCharsets.UTF_8);
+            position += 4 + length;
+        }
+
+        return new Macro(name, arity, literals, slots);
+    }
+
+    private static void writeBody(Macro macro, DataOutputStream out) throws IOException {
+        var slots = macro.getSlots();
+        out.writeShort(slots.length);
+        for (int slot : slots) out.writeShort(slot);
+
+        for (var literal : macro.getLiterals()) {
+            var bytes = utf8(literal);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] sha256(byte[] content) {
+        return sha256(ByteBuffer.wrap(content));
+    }
+
+    private static byte[] sha256(ByteBuffer content) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(content);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A run of the macro processor over a source file. When it streams into an {@link AssemblerSink}
+ * the first pass happens inside it, line by line; the {@link FirstPassEvent} the sink records
+ * tells how much of it the first pass took.
+ */
+@Name("macroprocessor.MacroProcess")
+@Label("Macro Processing")
+@Category({"Macro Processor", "Pipeline"})
+class MacroProcessEvent extends jdk.jfr.Event {
+    @Label("Source File")
+    String sourceFile;
+
+    @Label("Lines Read")
+    long linesRead;
+
+    @Label("Expansions")
+    @Description("Macro calls expanded, cached or not")
+    long expansions;
+}
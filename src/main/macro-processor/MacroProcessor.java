@@ -1,67 +1,114 @@
-import java.io.*;
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 
 public class MacroProcessor {
+    static final int DEFAULT_EXPANSION_CACHE_SIZE = 256;
+
     private final String inputFileName;
     private final HashMap<String, Macro> macroTable = new HashMap<>();
+    private final MacroLibrary library; // null without one; macros defined in the source take precedence
+    private final ExpansionCache expansionCache;
+    private final StringBuilder expansion = new StringBuilder();
+    private final LineScanner scanner = new LineScanner();
     private State state = State.NORMAL;
 
     public MacroProcessor(String inputFile) {
+        this(inputFile, DEFAULT_EXPANSION_CACHE_SIZE);
+    }
+
+    public MacroProcessor(String inputFile, int expansionCacheSize) {
+        this(inputFile, expansionCacheSize, null);
+    }
+
+    MacroProcessor(String inputFile, MacroLibrary library) {
+        this(inputFile, DEFAULT_EXPANSION_CACHE_SIZE, library);
+    }
+
+    MacroProcessor(String inputFile, int expansionCacheSize, MacroLibrary library) {
         this.inputFileName = inputFile;
+        this.library = library;
+        this.expansionCache = new ExpansionCache(expansionCacheSize);
     }
 
     public static void main(String[] args) throws IOException {
-        new MacroProcessor("src/main/resources/program.asm").processMacro();
+        var inputFile = "src/main/resources/program.asm";
+
+        try (var output = LineSink.toFile(inputFile + ".out")) {
+            new MacroProcessor(inputFile).process(output);
+        }
     }
 
     ArrayList<String> processMacro() throws IOException {
         var lines = new ArrayList<String>();
+        process(LineSink.toList(lines));
+        return lines;
+    }
+
+    /**
+     * Expands the input file line by line into the sink; only the macro table is kept in memory.
+     */
+    void process(LineSink sink) throws IOException {
+        var event = new MacroProcessEvent();
+        event.begin();
 
-        var reader = getInputReader();
         var macroBuilder = new MacroBuilder();
         var previousState = state;
+        long linesRead = 0;
+        long expansions = 0;
         String line;
 
-        loop:
-        while ((line = reader.readLine()) != null) {
-            previousState = state;
-            state = newStateFromLine(line);
-
-            switch (state) {
-                case DEFINITION:
-                    if (previousState == State.NORMAL) {
-                        macroBuilder = new MacroBuilder();
-                    }
-                    macroBuilder.parseLine(line);
-                    continue loop; // skip adding macro lines to output
-                case NORMAL:
-                    if (previousState == State.DEFINITION) {
-                        storeMacro(macroBuilder.build());
+        try (var reader = getInputReader()) {
+            loop:
+            while ((line = reader.readLine()) != null) {
+                linesRead++;
+                previousState = state;
+                state = newStateFromLine(scanner.scan(line));
+
+                switch (state) {
+                    case DEFINITION:
+                        if (previousState == State.NORMAL) {
+                            macroBuilder = new MacroBuilder();
+                        }
+                        macroBuilder.parseLine(line);
                         continue loop; // skip adding macro lines to output
-                    }
-                    break;
-                case EXPANSION:
-                    line = expandMacro(line);
-                    state = State.NORMAL;
-                    break;
+                    case NORMAL:
+                        if (previousState == State.DEFINITION) {
+                            storeMacro(macroBuilder.build());
+                            continue loop; // skip adding macro lines to output
+                        }
+                        break;
+                    case EXPANSION:
+                        expansions++;
+                        for (var expandedLine : expandMacro(line)) {
+                            sink.accept(expandedLine);
+                        }
+                        state = State.NORMAL;
+                        continue loop;
+                }
+
+                sink.accept(line, scanner);
             }
-
-            lines.add(line);
         }
 
-        reader.close();
-
-        writeOutput(lines);
-
-        return lines;
+        event.end();
+        if (event.shouldCommit()) {
+            event.sourceFile = inputFileName;
+            event.linesRead = linesRead;
+            event.expansions = expansions;
+            event.commit();
+        }
     }
 
-    private State newStateFromLine(String line) {
-        if (hasMacroDefinition(line)) return State.DEFINITION;
-        if (hasMacroEnd(line)) return State.NORMAL;
+    private State newStateFromLine(LineScanner line) {
+        if (line.isMacroDefinition()) return State.DEFINITION;
+        if (line.isMacroEnd()) return State.NORMAL;
         if (hasMacroCall(line)) return State.EXPANSION;
 
         return state;
@@ -71,29 +118,26 @@ public class MacroProcessor {
         return new BufferedReader(new FileReader(inputFileName));
     }
 
-    private void writeOutput(ArrayList<String> programOut) throws IOException {
-        FileWriter fileWriter = new FileWriter(inputFileName);
-        for (String line : programOut) {
-            fileWriter.write(line + "\n");
-        }
-        fileWriter.close();
-    }
-
-    private boolean hasMacroEnd(String line) {
-        return line.contains(Token.MCEND.toString());
+    private boolean hasMacroCall(LineScanner line) {
+        return findMacro(line.firstWord()) != null;
     }
 
-    private boolean hasMacroDefinition(String line) {
-        return line.contains(Token.MCDEFN.toString());
+    private Macro findMacro(String name) {
+        var macro = macroTable.get(name);
+        if (macro == null && library != null) macro = library.get(name);
+        return macro;
     }
 
-    private boolean hasMacroCall(String line) {
-        var macroName = line.split(" ")[0];
-        return macroTable.containsKey(macroName);
+    /**
+     * The macros defined in the input so far, not counting the library's.
+     */
+    Collection<Macro> macros() {
+        return macroTable.values();
     }
 
     private void storeMacro(Macro macro) {
-        macroTable.put(macro.getName(), macro);
+        var previous = macroTable.put(macro.getName(), macro);
+        if (previous != null) expansionCache.invalidate(previous);
     }
 
     private List<String> parseMacroCall(String line) {
@@ -103,12 +147,39 @@ public class MacroProcessor {
                 .toList();
     }
 
-    private String expandMacro(String lineWithTheCall) {
+    private String[] expandMacro(String lineWithTheCall) throws IOException {
         var nameAndArgs = parseMacroCall(lineWithTheCall);
-        var name = nameAndArgs.get(0);
+        var macro = findMacro(nameAndArgs.get(0));
         var args = nameAndArgs.subList(1, nameAndArgs.size());
 
-        return macroTable.get(name).expand(args);
+        var lines = expansionCache.get(macro, args);
+        if (lines != null) return lines;
+
+        expansion.setLength(0);
+        macro.expand(args, expansion);
+        lines = splitLines(expansion);
+
+        expansionCache.put(macro, args, lines);
+        return lines;
+    }
+
+    private String[] splitLines(CharSequence text) {
+        var lines = new ArrayList<String>();
+
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines.add(text.subSequence(start, i).toString());
+                start = i + 1;
+            }
+        }
+        lines.add(text.subSequence(start, text.length()).toString());
+
+        return lines.toArray(String[]::new);
+    }
+
+    ExpansionCache getExpansionCache() {
+        return expansionCache;
     }
 
     enum State {NORMAL, DEFINITION, EXPANSION}
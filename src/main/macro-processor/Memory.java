@@ -8,9 +8,15 @@
 |      Bitwise inclusive OR
 */
 
-import utils.BitsetUtils;
-
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.BitSet;
 
 enum Flags {
@@ -30,6 +36,10 @@ enum Flags {
     public int getValue() {
         return value;
     }
+
+    public short mask() {
+        return (short) (1 << value);
+    }
 }
 
 public class Memory {
@@ -37,18 +47,40 @@ public class Memory {
     static final short DX = 0b11110000;
 
     private static final short MEM_SIZE = 2 << 12;
+    private static final int SNAPSHOT_MAGIC = 0x4D50534E; // MPSN
+    private static final short SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_REGISTERS = 8;
+    private static final int SNAPSHOT_SIZE = 8 + SNAPSHOT_REGISTERS * 2 + MEM_SIZE * 2;
+    static final short ZERO = Flags.ZERO.mask();
+    static final short SIGN = Flags.SIGN.mask();
     public final short[] data = new short[MEM_SIZE];
     public final short opStart = 0;
     private final short symbolOffset = 2 << 10;
     private final short si = 0;
     public short ip = opStart;
-    private BitSet sr = new BitSet(16);
+    public short codeEnd = opStart;
+    private short sr = 0; // status register, a bit per Flags value
     private short sp = MEM_SIZE - 1;
     private short dx = 0;
     private short ax = 0;
     private short symbolPointer = symbolOffset;
+    private boolean halted = false;
+    private final GuestIO io;
 
     public Memory() {
+        this(System.in, System.out);
+    }
+
+    /**
+     * @param in  read by READ instructions
+     * @param out written by WRITE instructions, buffered until the program halts or the buffer fills up
+     */
+    public Memory(InputStream in, OutputStream out) {
+        this(GuestIO.of(in, out));
+    }
+
+    public Memory(GuestIO io) {
+        this.io = io;
     }
 
     public static void main(String[] args) {
@@ -94,6 +126,89 @@ public class Memory {
         symbolPointer++;
     }
 
+    /**
+     * Bulk version of storeSymbol and storeOp: copies the symbol values and the code
+     * (opcode, arg pairs) into place and points ip at the first instruction.
+     */
+    public void loadImage(ShortBuffer symbols, ShortBuffer code) {
+        int symbolCount = symbols.remaining();
+        int codeLength = code.remaining();
+        if (symbolOffset + symbolCount > MEM_SIZE || opStart + codeLength > symbolOffset) {
+            throw new Error("image doesn't fit in memory");
+        }
+
+        symbols.get(data, symbolOffset, symbolCount);
+        symbolPointer = (short) (symbolOffset + symbolCount);
+
+        code.get(data, opStart, codeLength);
+        codeEnd = (short) (opStart + codeLength);
+        ip = opStart;
+    }
+
+    /**
+     * Saves the whole machine state, memory and registers, into a memory-mapped file.
+     * Layout, big endian: int magic "MPSN", short version, short reserved, the registers
+     * ip, codeEnd, sp, ax, dx, sr, symbolPointer and halted as shorts, then the memory.
+     */
+    public void snapshot(Path path) throws IOException {
+        io.flush(); // output written before the snapshot isn't written again by runs resumed from it
+        var options = new StandardOpenOption[]{
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING
+        };
+
+        try (var channel = FileChannel.open(path, options)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SNAPSHOT_SIZE);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+
+            buffer.putInt(SNAPSHOT_MAGIC);
+            buffer.putShort(SNAPSHOT_VERSION);
+            buffer.putShort((short) 0);
+
+            var shorts = buffer.asShortBuffer();
+            shorts.put(new short[]{ip, codeEnd, sp, ax, dx, sr, symbolPointer, (short) (halted ? 1 : 0)});
+            shorts.put(data);
+
+            buffer.force();
+        }
+    }
+
+    /**
+     * Replaces the machine state with one saved by {@link #snapshot(Path)}.
+     */
+    public void restore(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() != SNAPSHOT_SIZE) {
+                throw new IOException(path + " is not a memory snapshot");
+            }
+
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, SNAPSHOT_SIZE).order(ByteOrder.BIG_ENDIAN);
+            if (buffer.getInt() != SNAPSHOT_MAGIC) {
+                throw new IOException(path + " is not a memory snapshot");
+            }
+
+            short version = buffer.getShort();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException(path + " has snapshot version " + version + ", want " + SNAPSHOT_VERSION);
+            }
+            buffer.getShort(); // reserved
+
+            var shorts = buffer.asShortBuffer();
+            var registers = new short[SNAPSHOT_REGISTERS];
+            shorts.get(registers);
+            shorts.get(data);
+
+            ip = registers[0];
+            codeEnd = registers[1];
+            sp = registers[2];
+            ax = registers[3];
+            dx = registers[4];
+            sr = registers[5];
+            symbolPointer = registers[6];
+            halted = registers[7] != 0;
+        }
+    }
+
     public short symbolAddress(short offset) {
         return (short) (symbolOffset + offset);
     }
@@ -128,8 +243,14 @@ public class Memory {
 
     public void cmp(short address) {
         dx = get(address);
-        sr.set(Flags.ZERO.getValue(), ax == dx);
-        sr.set(Flags.SIGN.getValue(), ax < dx);
+        sr = compareFlags(sr, ax, dx);
+    }
+
+    /**
+     * The status register after comparing ax with dx; shared with the code {@link GuestCompiler} generates.
+     */
+    static short compareFlags(short sr, short ax, short dx) {
+        return (short) (sr & ~(ZERO | SIGN) | (ax == dx ? ZERO : 0) | (ax < dx ? SIGN : 0));
     }
 
     public void not() {
@@ -148,45 +269,183 @@ public class Memory {
 
     public void and(short address) {
         dx = get(address);
-        and(DX);
+        ax = (short) (ax & dx);
     }
 
     public void jmp(short address) {
+        ip = jumpTarget(address);
+    }
+
+    public void jmpTo(short target) {
+        ip = target;
+    }
+
+    public short jumpTarget(short address) {
         // each instruction is followed by its args, so we need to
         // double the offset to point to the correct instruction
         short offset = data[address];
-        ip = (short) (offset * 2);
+        return (short) (offset * 2);
     }
 
     public void jz(short address) {
-        if (sr.get(Flags.ZERO.getValue())) {
-            ip = address;
+        if ((sr & ZERO) != 0) {
+            jmp(address);
+        }
+    }
+
+    public void jzTo(short target) {
+        if ((sr & ZERO) != 0) {
+            ip = target;
         }
     }
 
     public void jnz(short address) {
-        if (!sr.get(Flags.ZERO.getValue())) {
-            ip = address;
+        if ((sr & ZERO) == 0) {
+            jmp(address);
+        }
+    }
+
+    public void jnzTo(short target) {
+        if ((sr & ZERO) == 0) {
+            ip = target;
         }
     }
 
     public void jp(short address) {
-        if (!sr.get(Flags.SIGN.getValue())) {
+        if ((sr & SIGN) == 0) {
             jmp(address);
         }
     }
 
+    public void jpTo(short target) {
+        if ((sr & SIGN) == 0) {
+            ip = target;
+        }
+    }
+
     public void call(short address) {
         stackPush(ip);
         jmp(address);
     }
 
+    public void callTo(short target) {
+        stackPush(ip);
+        ip = target;
+    }
+
     public void ret() {
         ip = stackPop();
     }
 
+    // superinstructions, see Superinstructions: ip is moved past each part as the separate
+    // instructions would move it, so a taken jump leaves it at its target
+
+    void cmpJp(short address, short target) {
+        cmp(address);
+        ip += 2;
+        jpTo(target);
+    }
+
+    void cmpJz(short address, short target) {
+        cmp(address);
+        ip += 2;
+        jzTo(target);
+    }
+
+    void cmpJnz(short address, short target) {
+        cmp(address);
+        ip += 2;
+        jnzTo(target);
+    }
+
+    void cmpJpJmp(short address, short target, short elseTarget) {
+        cmp(address);
+        ip += 2;
+        if ((sr & SIGN) == 0) {
+            ip = target;
+        } else {
+            ip = elseTarget;
+        }
+    }
+
+    void addStore(short address, short destination) {
+        add(address);
+        ip += 2;
+        storeAx(destination);
+    }
+
+    void subStore(short address, short destination) {
+        sub(address);
+        ip += 2;
+        storeAx(destination);
+    }
+
+    void storeWrite(short destination, short address) {
+        storeAx(destination);
+        ip += 2;
+        write(address);
+    }
+
+    void addStoreWrite(short address, short destination, short written) {
+        add(address);
+        ip += 2;
+        storeAx(destination);
+        ip += 2;
+        write(written);
+    }
+
     public void hlt() {
-        System.exit(0);
+        halted = true;
+        flush();
+    }
+
+    /**
+     * Sends out what WRITE instructions left in the output buffer.
+     */
+    public void flush() {
+        try {
+            io.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public boolean isHalted() {
+        return halted;
+    }
+
+    public short getAx() {
+        return ax;
+    }
+
+    public short getDx() {
+        return dx;
+    }
+
+    short getSr() {
+        return sr;
+    }
+
+    /**
+     * Writes back the registers compiled code keeps in locals.
+     */
+    void storeRegisters(short ax, short dx, short sr) {
+        this.ax = ax;
+        this.dx = dx;
+        this.sr = sr;
+    }
+
+    /**
+     * Puts the registers back the way loading a program leaves them, so it can run again.
+     * Symbols keep whatever the last run stored to them.
+     */
+    void rewind() {
+        ip = opStart;
+        sp = MEM_SIZE - 1;
+        ax = 0;
+        dx = 0;
+        sr = 0;
+        halted = false;
     }
 
     public void pop(short address) {
@@ -194,20 +453,29 @@ public class Memory {
     }
 
     public void popf() {
-        sr = BitsetUtils.fromShort(stackPop());
+        sr = stackPop();
     }
 
     public void pushf() {
-        stackPush((short) BitsetUtils.toInt(sr));
+        stackPush(sr);
     }
 
     void write(short address) {
-        System.out.println(get(address));
+        try {
+            io.write(get(address));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
-    private void read(short address) throws IOException {
-        var in = System.in.read();
-        data[address] = (short) in;
+    void read(short address) {
+        assertValidAddress(address);
+
+        try {
+            data[address] = (short) io.read();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     private short stackPop() {
@@ -0,0 +1,29 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Interns names into dense ids, 0, 1, 2, ... in the order they are first seen,
+ * so the assembler can index arrays by name instead of hashing and comparing strings.
+ */
+class NameTable {
+    private final HashMap<String, Integer> ids = new HashMap<>();
+    private final ArrayList<String> names = new ArrayList<>();
+
+    int intern(String name) {
+        var id = ids.get(name);
+        if (id != null) return id;
+
+        id = names.size();
+        ids.put(name, id);
+        names.add(name);
+        return id;
+    }
+
+    String name(int id) {
+        return names.get(id);
+    }
+
+    int size() {
+        return names.size();
+    }
+}
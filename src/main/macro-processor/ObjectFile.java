@@ -0,0 +1,115 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary form of an {@link IntermediateFile}, loaded straight into {@link Memory} so a
+ * program can run again without going through the macro processor and the first pass.
+ * <p>
+ * Layout, big endian:
+ * <pre>
+ * int   magic "MPOB"
+ * short version
+ * short reserved
+ * int   symbol count
+ * int   instruction count
+ * short symbol values[symbol count], in symbol table order
+ * short code[2 * instruction count], opcode and arg of each instruction
+ * utf   symbol names[symbol count], as written by DataOutputStream.writeUTF
+ * </pre>
+ */
+class ObjectFile {
+    static final int MAGIC = 0x4D504F42; // MPOB
+    static final short VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private ObjectFile() {
+    }
+
+    static void write(IntermediateFile intermediateFile, Path path) throws IOException {
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(0);
+            out.writeInt(intermediateFile.symbolTable.size());
+            out.writeInt(intermediateFile.instructions.size());
+
+            for (var symbol : intermediateFile.symbolTable) {
+                out.writeShort(symbol.getValue());
+            }
+
+            for (var instruction : intermediateFile.instructions) {
+                out.writeShort(instruction.op.opcode);
+                out.writeShort(instruction.args.get(0));
+            }
+
+            for (var symbol : intermediateFile.symbolTable) {
+                out.writeUTF(symbol.name);
+            }
+        }
+    }
+
+    /**
+     * Maps the file and copies its symbols and code into memory in bulk.
+     */
+    static void load(Path path, Memory memory) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.BIG_ENDIAN);
+
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException(path + " is not an object file");
+            }
+
+            short version = buffer.getShort();
+            if (version != VERSION) {
+                throw new IOException(path + " has object file version " + version + ", want " + VERSION);
+            }
+            buffer.getShort(); // reserved
+
+            int symbolCount = buffer.getInt();
+            int codeLength = buffer.getInt() * 2;
+            if (symbolCount < 0 || codeLength < 0 || buffer.remaining() < (symbolCount + codeLength) * 2L) {
+                throw new IOException(path + " is truncated");
+            }
+
+            memory.loadImage(
+                    section(buffer, HEADER_SIZE, symbolCount),
+                    section(buffer, HEADER_SIZE + symbolCount * 2, codeLength)
+            );
+        }
+    }
+
+    /**
+     * How many instructions the object file holds, reading its header only.
+     */
+    static int instructionCount(Path path) throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), HEADER_SIZE))) {
+            if (in.readInt() != MAGIC) throw new IOException(path + " is not an object file");
+
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException(path + " has object file version " + version + ", want " + VERSION);
+            }
+            in.readShort(); // reserved
+            in.readInt(); // symbol count
+
+            return in.readInt();
+        } catch (EOFException e) {
+            throw new IOException(path + " is not an object file", e);
+        }
+    }
+
+    private static ShortBuffer section(ByteBuffer buffer, int offset, int length) {
+        return buffer.slice(offset, length * 2).order(ByteOrder.BIG_ENDIAN).asShortBuffer();
+    }
+}
@@ -0,0 +1,32 @@
+import java.util.HashMap;
+
+/**
+ * Lookup of op codes by mnemonic and type, and by opcode byte, built once from the directives.
+ * When two directives share a key the first one wins, as a linear search over them would.
+ */
+class OpCodeIndex {
+    // op codes of a mnemonic, indexed by OpCode.Type ordinal
+    private final HashMap<String, OpCode[]> byMnemonic = new HashMap<>();
+    private final OpCode[] byOpcode = new OpCode[256];
+
+    OpCodeIndex(OpCode[] directives) {
+        for (var op : directives) {
+            var types = byMnemonic.computeIfAbsent(op.mnemonic, m -> new OpCode[OpCode.Type.values().length]);
+            if (types[op.type.ordinal()] == null) types[op.type.ordinal()] = op;
+            if (byOpcode[op.opcode & 0xFF] == null) byOpcode[op.opcode & 0xFF] = op;
+        }
+    }
+
+    OpCode find(String mnemonic, OpCode.Type type) {
+        var types = byMnemonic.get(mnemonic);
+        return types == null ? null : types[type.ordinal()];
+    }
+
+    OpCode find(byte opcode) {
+        return byOpcode[opcode & 0xFF];
+    }
+
+    boolean isMnemonic(String mnemonic) {
+        return byMnemonic.containsKey(mnemonic);
+    }
+}
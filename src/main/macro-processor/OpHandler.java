@@ -0,0 +1,4 @@
+@FunctionalInterface
+interface OpHandler {
+    void execute(Memory memory, short arg);
+}
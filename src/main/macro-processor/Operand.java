@@ -0,0 +1,36 @@
+/**
+ * An instruction argument, classified once by the {@link OperandLexer}.
+ */
+class Operand {
+    static final int NO_ID = -1;
+
+    final String text;
+    final OpCode.Type type;
+    final int id; // interned name of registers and symbols
+    private final short value;
+
+    Operand(String text, OpCode.Type type, int id, short value) {
+        this.text = text;
+        this.type = type;
+        this.id = id;
+        this.value = value;
+    }
+
+    boolean isSymbol() {
+        return type == OpCode.Type.RegisterIndex;
+    }
+
+    /**
+     * @return the number of an immediate, or the code of a register
+     */
+    short value() {
+        if (isSymbol()) throw new NumberFormatException("For input string: \"" + text + "\"");
+
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return text + " (" + type + ')';
+    }
+}
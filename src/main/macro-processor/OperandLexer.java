@@ -0,0 +1,76 @@
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Classifies operands as numbers, registers or symbols, looking at each character once.
+ * Numbers are decimal integers with an optional sign, parsed straight into a short.
+ * Names are interned, registers first, and the operand of a name is built once and reused. Numbers
+ * share one operand per value between all lexers, so lexing a token allocates only the first time
+ * its name or value comes up.
+ */
+class OperandLexer {
+    private static final long NOT_A_NUMBER = Long.MIN_VALUE;
+    private static final Operand[] immediates = new Operand[1 << 16]; // by value - Short.MIN_VALUE
+
+    private final NameTable names;
+    private Operand[] operands; // by name id
+
+    OperandLexer(NameTable names, Map<String, Short> registers) {
+        this.names = names;
+        this.operands = new Operand[Math.max(64, names.size() + registers.size())];
+
+        registers.forEach((name, code) -> {
+            int id = names.intern(name);
+            operands[id] = new Operand(name, OpCode.Type.RegisterRegister, id, code);
+        });
+    }
+
+    Operand lex(String token) {
+        long number = parseNumber(token);
+        if (number != NOT_A_NUMBER) {
+            if (number < Short.MIN_VALUE || number > Short.MAX_VALUE) {
+                throw new NumberFormatException("Value out of range. Value:\"" + token + "\"");
+            }
+            return immediate((short) number);
+        }
+
+        int id = names.intern(token);
+        if (id >= operands.length) operands = Arrays.copyOf(operands, Math.max(operands.length * 2, id + 1));
+        if (operands[id] == null) operands[id] = new Operand(token, OpCode.Type.RegisterIndex, id, (short) 0);
+
+        return operands[id];
+    }
+
+    // operands are immutable, so a lexer that races another one to fill a slot just builds an equal one
+    private static Operand immediate(short value) {
+        int slot = value - Short.MIN_VALUE;
+        var operand = immediates[slot];
+        if (operand == null) {
+            operand = new Operand(Short.toString(value), OpCode.Type.RegisterImmediate, Operand.NO_ID, value);
+            immediates[slot] = operand;
+        }
+        return operand;
+    }
+
+    // the number, or NOT_A_NUMBER; big numbers stop growing once they are out of the short range
+    private long parseNumber(String token) {
+        int length = token.length();
+        int i = 0;
+        boolean negative = false;
+
+        if (length > 0 && (token.charAt(0) == '-' || token.charAt(0) == '+')) {
+            negative = token.charAt(0) == '-';
+            i++;
+        }
+        if (i == length) return NOT_A_NUMBER;
+
+        long value = 0;
+        for (; i < length; i++) {
+            char c = token.charAt(i);
+            if (c < '0' || c > '9') return NOT_A_NUMBER;
+            if (value <= Short.MAX_VALUE + 1) value = value * 10 + (c - '0');
+        }
+
+        return negative ? -value : value;
+    }
+}
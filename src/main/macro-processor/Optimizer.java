@@ -0,0 +1,290 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Optional pass between the first and the second pass that rewrites the instructions of an
+ * {@link IntermediateFile}, repeating until nothing changes:
+ * <ul>
+ *     <li>jump threading: a jump to a jmp goes straight to where that jmp goes;</li>
+ *     <li>constant propagation: along straight line code, ax and the flags are followed through symbols the
+ *     program never stores to, and conditional jumps whose outcome is known become jmp or go away;</li>
+ *     <li>peephole: jumps to the next instruction, a store repeated, a cmp overwritten by the next one, and
+ *     pushf right before popf go away;</li>
+ *     <li>unreachable code: instructions no path from the first one gets to go away.</li>
+ * </ul>
+ * Removing instructions moves labels, so it is skipped altogether when a label is also used as data
+ * or a jump goes somewhere that isn't a label. The program given is left as it was.
+ */
+class Optimizer {
+    // part of the AssemblyCache key: bump it whenever the rewrites change
+    static final short VERSION = 1;
+    private static final int MAX_ROUNDS = 16;
+
+    private final SymbolTable symbolTable = new SymbolTable();
+    private List<Instruction> instructions = new ArrayList<>();
+    private final boolean[] stored; // by symbol offset: written by the program, so not a constant
+    private final boolean canMoveCode;
+
+    private Optimizer(IntermediateFile program) {
+        for (var symbol : program.symbolTable) {
+            var copy = new SymbolTableEntry(symbol.id, symbol.name, symbol.getValue());
+            if (!symbol.isUndefined()) copy.setDefined();
+            if (symbol.isLabel()) copy.setLabel();
+            symbolTable.put(copy);
+        }
+
+        for (var instruction : program.instructions) {
+            var copy = new Instruction();
+            copy.op = instruction.op;
+            copy.args.addAll(instruction.args);
+            instructions.add(copy);
+        }
+
+        stored = new boolean[symbolTable.size()];
+        boolean labelsAreCode = true;
+        for (var instruction : instructions) {
+            if (instruction.op.type != OpCode.Type.RegisterIndex) continue;
+
+            var symbol = symbol(instruction);
+            if (isStore(instruction.op)) stored[arg(instruction)] = true;
+            if (isJump(instruction.op) != symbol.isLabel()) labelsAreCode = false;
+            if (isJump(instruction.op) && (target(instruction) < 0 || target(instruction) > instructions.size())) {
+                labelsAreCode = false;
+            }
+        }
+        for (var symbol : symbolTable) {
+            if (symbol.isLabel() && stored[symbolTable.offsetOf(symbol)]) labelsAreCode = false;
+        }
+        canMoveCode = labelsAreCode;
+    }
+
+    static IntermediateFile optimize(IntermediateFile program) {
+        var optimizer = new Optimizer(program);
+
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            if (!optimizer.round()) break;
+        }
+
+        return new IntermediateFile(optimizer.symbolTable, optimizer.instructions);
+    }
+
+    private boolean round() {
+        boolean changed = threadJumps();
+        changed |= propagateConstants();
+        changed |= peephole();
+        changed |= removeUnreachable();
+        return changed;
+    }
+
+    private boolean threadJumps() {
+        boolean changed = false;
+
+        for (var instruction : instructions) {
+            if (!isJump(instruction.op) || stored[arg(instruction)]) continue;
+
+            short arg = arg(instruction);
+            int target = target(instruction);
+            // at most one hop per instruction in the chain, so a cycle of jmps stops
+            for (int hops = 0; hops < instructions.size() && isThreadable(target); hops++) {
+                var next = instructions.get(target);
+                arg = arg(next);
+                target = target(next);
+            }
+
+            if (arg != arg(instruction)) {
+                instruction.args.set(0, arg);
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    private boolean isThreadable(int target) {
+        if (target < 0 || target >= instructions.size()) return false;
+
+        var instruction = instructions.get(target);
+        return instruction.op == Program.JMPRX && !stored[arg(instruction)];
+    }
+
+    private boolean propagateConstants() {
+        var targets = targets();
+        var removed = new boolean[instructions.size()];
+        boolean changed = false;
+
+        // what's known about the registers right before each instruction; the program starts with them cleared
+        boolean axKnown = true;
+        short ax = 0;
+        boolean flagsKnown = true;
+        short flags = 0;
+
+        for (int i = 0; i < instructions.size(); i++) {
+            if (targets[i]) {
+                axKnown = false;
+                flagsKnown = false;
+            }
+
+            var instruction = instructions.get(i);
+            var op = instruction.op;
+
+            if (op == Program.ADDRX || op == Program.SUBRX) {
+                if (axKnown && isConstant(instruction)) {
+                    short value = symbol(instruction).getValue();
+                    ax = (short) (op == Program.ADDRX ? ax + value : ax - value);
+                } else {
+                    axKnown = false;
+                }
+            } else if (op == Program.CMPRX) {
+                flagsKnown = axKnown && isConstant(instruction);
+                if (flagsKnown) flags = Memory.compareFlags((short) 0, ax, symbol(instruction).getValue());
+            } else if (op == Program.JZ || op == Program.JNZ || op == Program.JP) {
+                if (flagsKnown) {
+                    boolean taken = op == Program.JZ ? (flags & Memory.ZERO) != 0
+                            : op == Program.JNZ ? (flags & Memory.ZERO) == 0
+                            : (flags & Memory.SIGN) == 0;
+
+                    if (taken) {
+                        instruction.op = Program.JMPRX;
+                        changed = true;
+                    } else if (canMoveCode) {
+                        removed[i] = true;
+                    }
+                }
+            } else if (op == Program.STRRX || op == Program.WRITE || op == Program.PUSHF) {
+                // registers untouched
+            } else if (op == Program.JMPRX || op == Program.HLT || op == Program.RET) {
+                // what follows is only reached by a jump, and targets start unknown anyway
+            } else {
+                axKnown = false;
+                flagsKnown = false;
+            }
+        }
+
+        return compact(removed) || changed;
+    }
+
+    private boolean peephole() {
+        if (!canMoveCode) return false;
+
+        var targets = targets();
+        var removed = new boolean[instructions.size()];
+
+        for (int i = 0; i < instructions.size(); i++) {
+            var instruction = instructions.get(i);
+            var op = instruction.op;
+            var next = i + 1 < instructions.size() ? instructions.get(i + 1) : null;
+
+            if ((op == Program.JMPRX || op == Program.JZ || op == Program.JNZ || op == Program.JP) && target(instruction) == i + 1) {
+                removed[i] = true; // wherever it goes, it goes to the next instruction
+            } else if (next == null || removed[i]) {
+                continue;
+            } else if (op == Program.STRRX && next.op == Program.STRRX && arg(next) == arg(instruction) && !targets[i + 1]) {
+                removed[i + 1] = true;
+            } else if (op == Program.CMPRX && next.op == Program.CMPRX) {
+                removed[i] = true; // the next one sets dx and the flags over again
+            } else if (op == Program.PUSHF && next.op == Program.POPF && !targets[i + 1]) {
+                removed[i] = true;
+                removed[i + 1] = true;
+            }
+        }
+
+        return compact(removed);
+    }
+
+    private boolean removeUnreachable() {
+        if (!canMoveCode) return false;
+
+        int size = instructions.size();
+        var returnPoints = new ArrayList<Integer>();
+        for (int i = 0; i < size; i++) {
+            if (instructions.get(i).op == Program.CALL) returnPoints.add(i + 1);
+        }
+
+        var reached = new boolean[size + 1];
+        var pending = new ArrayDeque<Integer>();
+        pending.add(0);
+        while (!pending.isEmpty()) {
+            int i = pending.poll();
+            if (reached[i]) continue;
+            reached[i] = true;
+            if (i == size) continue; // falls off the end
+
+            var instruction = instructions.get(i);
+            var op = instruction.op;
+            if (isJump(op)) pending.add(target(instruction));
+            if (op == Program.RET) pending.addAll(returnPoints);
+            if (op != Program.JMPRX && op != Program.HLT && op != Program.RET) pending.add(i + 1);
+        }
+
+        var removed = new boolean[size];
+        for (int i = 0; i < size; i++) removed[i] = !reached[i];
+        return compact(removed);
+    }
+
+    // instructions a jump, a call or a return can land on
+    private boolean[] targets() {
+        var targets = new boolean[instructions.size() + 1];
+
+        for (int i = 0; i < instructions.size(); i++) {
+            var instruction = instructions.get(i);
+            if (isJump(instruction.op)) {
+                int target = target(instruction);
+                if (target >= 0 && target < targets.length) targets[target] = true;
+            }
+            if (instruction.op == Program.CALL) targets[i + 1] = true;
+        }
+
+        return targets;
+    }
+
+    /**
+     * Drops the removed instructions and moves every label to the first instruction kept at or after it.
+     */
+    private boolean compact(boolean[] removed) {
+        int size = instructions.size();
+        var newIndex = new short[size + 1];
+        var kept = new ArrayList<Instruction>(size);
+
+        for (int i = 0; i < size; i++) {
+            newIndex[i] = (short) kept.size();
+            if (!removed[i]) kept.add(instructions.get(i));
+        }
+        newIndex[size] = (short) kept.size();
+
+        if (kept.size() == size) return false;
+
+        for (var symbol : symbolTable) {
+            if (symbol.isLabel() && symbol.getValue() >= 0 && symbol.getValue() <= size) {
+                symbol.setValue(newIndex[symbol.getValue()]);
+            }
+        }
+
+        instructions = kept;
+        return true;
+    }
+
+    private boolean isConstant(Instruction instruction) {
+        return !stored[arg(instruction)] && !symbol(instruction).isUndefined();
+    }
+
+    private SymbolTableEntry symbol(Instruction instruction) {
+        return symbolTable.atOffset(arg(instruction));
+    }
+
+    private int target(Instruction instruction) {
+        return symbol(instruction).getValue();
+    }
+
+    private static short arg(Instruction instruction) {
+        return instruction.args.get(0);
+    }
+
+    private static boolean isJump(OpCode op) {
+        return op == Program.JMPRX || op == Program.JZ || op == Program.JNZ || op == Program.JP || op == Program.CALL;
+    }
+
+    private static boolean isStore(OpCode op) {
+        return op == Program.STRRX || op == Program.READ;
+    }
+}
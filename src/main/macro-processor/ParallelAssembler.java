@@ -0,0 +1,46 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Macro processes and assembles source files in parallel, each into its own program, then links them.
+ */
+class ParallelAssembler {
+    private final ForkJoinPool pool;
+    private final MacroLibrary library; // shared by every file, null without one
+
+    ParallelAssembler() {
+        this(ForkJoinPool.commonPool(), null);
+    }
+
+    ParallelAssembler(ForkJoinPool pool) {
+        this(pool, null);
+    }
+
+    ParallelAssembler(ForkJoinPool pool, MacroLibrary library) {
+        this.pool = pool;
+        this.library = library;
+    }
+
+    IntermediateFile assemble(List<String> sourceFiles) {
+        var programs = sourceFiles.stream()
+                .map(file -> CompletableFuture.supplyAsync(() -> assemble(file), pool))
+                .toList();
+
+        return Linker.link(programs.stream().map(CompletableFuture::join).toList());
+    }
+
+    private IntermediateFile assemble(String sourceFile) {
+        var program = new Program();
+
+        try (var assembler = new AssemblerSink(program)) {
+            new MacroProcessor(sourceFile, library).process(assembler);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return program.intermediateFile();
+    }
+}
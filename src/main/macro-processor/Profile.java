@@ -0,0 +1,163 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Execution counts of a guest program, collected by the profiling interpreter loop:
+ * per opcode, per instruction, taken and not taken branches, and the call tree.
+ */
+class Profile {
+    private final OpCodeIndex opCodes;
+    private final String[] labels; // by instruction index, null where there is none
+
+    private final long[] opcodeCounts = new long[256];
+    private final long[] hits;
+    private final long[] taken;
+    private final long[] notTaken;
+    private long instructions;
+
+    // call tree, a node per distinct call stack; node 0 is the program entry
+    private final HashMap<Long, Integer> children = new HashMap<>();
+    private int[] parents = new int[16];
+    private int[] functions = new int[16]; // instruction index the function starts at
+    private long[] samples = new long[16];
+    private long[] calls = new long[16];
+    private int nodeCount = 1;
+    private int current = 0;
+
+    Profile(OpCodeIndex opCodes, String[] labels) {
+        this.opCodes = opCodes;
+        this.labels = labels;
+        this.hits = new long[labels.length];
+        this.taken = new long[labels.length];
+        this.notTaken = new long[labels.length];
+    }
+
+    void instruction(int pc, short opcode) {
+        instructions++;
+        opcodeCounts[opcode & 0xFF]++;
+        hits[pc]++;
+        samples[current]++;
+    }
+
+    void branch(int pc, boolean wasTaken) {
+        if (wasTaken) {
+            taken[pc]++;
+        } else {
+            notTaken[pc]++;
+        }
+    }
+
+    void call(int target) {
+        current = child(current, target);
+        calls[current]++;
+    }
+
+    void ret() {
+        if (current != 0) current = parents[current];
+    }
+
+    long instructions() {
+        return instructions;
+    }
+
+    long opcodeCount(OpCode op) {
+        return opcodeCounts[op.opcode & 0xFF];
+    }
+
+    long hits(int pc) {
+        return hits[pc];
+    }
+
+    long taken(int pc) {
+        return taken[pc];
+    }
+
+    long notTaken(int pc) {
+        return notTaken[pc];
+    }
+
+    void writeReport(Appendable out) throws IOException {
+        out.append(String.format("instructions: %d%n", instructions));
+
+        out.append(String.format("%nopcodes%n"));
+        for (int opcode = 0; opcode < opcodeCounts.length; opcode++) {
+            if (opcodeCounts[opcode] == 0) continue;
+            out.append(String.format("  %-10s %12d%n", opName((short) opcode), opcodeCounts[opcode]));
+        }
+
+        out.append(String.format("%ninstructions by ip%n"));
+        for (int pc = 0; pc < hits.length; pc++) {
+            if (hits[pc] == 0) continue;
+            out.append(String.format("  %6d %-12s %12d%n", pc * 2, label(pc), hits[pc]));
+        }
+
+        out.append(String.format("%nbranches%n"));
+        for (int pc = 0; pc < hits.length; pc++) {
+            long total = taken[pc] + notTaken[pc];
+            if (total == 0) continue;
+            out.append(String.format(
+                    "  %6d %-12s taken %12d  not taken %12d  (%.1f%% taken)%n",
+                    pc * 2, label(pc), taken[pc], notTaken[pc], 100.0 * taken[pc] / total
+            ));
+        }
+
+        out.append(String.format("%ncalls%n"));
+        for (int node = 1; node < nodeCount; node++) {
+            out.append(String.format("  %s -> %s %12d%n", function(parents[node]), function(node), calls[node]));
+        }
+    }
+
+    /**
+     * One line per call stack, "main;caller;callee count", the input format of flame graph tools.
+     */
+    void writeCollapsedStacks(Appendable out) throws IOException {
+        for (int node = 0; node < nodeCount; node++) {
+            if (samples[node] == 0) continue;
+            out.append(stack(node)).append(' ').append(Long.toString(samples[node])).append('\n');
+        }
+    }
+
+    private int child(int parent, int function) {
+        long key = (long) parent << 32 | function;
+        var child = children.get(key);
+        if (child != null) return child;
+
+        if (nodeCount == parents.length) {
+            int length = parents.length * 2;
+            parents = Arrays.copyOf(parents, length);
+            functions = Arrays.copyOf(functions, length);
+            samples = Arrays.copyOf(samples, length);
+            calls = Arrays.copyOf(calls, length);
+        }
+
+        parents[nodeCount] = parent;
+        functions[nodeCount] = function;
+        children.put(key, nodeCount);
+        return nodeCount++;
+    }
+
+    private String stack(int node) {
+        var frames = new ArrayList<String>();
+        for (int n = node; n != 0; n = parents[n]) frames.add(0, function(n));
+        frames.add(0, function(0));
+        return String.join(";", frames);
+    }
+
+    private String function(int node) {
+        if (node == 0) return "main";
+
+        var label = label(functions[node]);
+        return label.isEmpty() ? "ip_" + functions[node] * 2 : label;
+    }
+
+    private String label(int pc) {
+        return pc < labels.length && labels[pc] != null ? labels[pc] : "";
+    }
+
+    private String opName(short opcode) {
+        var op = opCodes.find((byte) opcode);
+        return op == null ? "op_" + opcode : op.mnemonic + "_" + op.type;
+    }
+}
@@ -1,11 +1,12 @@
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
-import static utils.NumberUtils.isNumeric;
-
 public class Program {
+    // part of the AssemblyCache key: bump it whenever the macro processor or the first pass assemble differently
+    static final short ASSEMBLER_VERSION = 1;
     static final OpCode HLT = new OpCode("hlt", (byte) 0, OpCode.Type.RegisterRegister);
     static final OpCode ADDRR = new OpCode("add", (byte) 1, OpCode.Type.RegisterRegister);
     static final OpCode ADDRX = new OpCode("add", (byte) 2, OpCode.Type.RegisterIndex);
@@ -46,88 +47,127 @@ public class Program {
     static final OpCode XORRI = new OpCode("xor", (byte) 37, OpCode.Type.RegisterImmediate);
     static final OpCode XORRR = new OpCode("xor", (byte) 38, OpCode.Type.RegisterRegister);
 
-    private final OpCode[] directives = {
+    private static final OpCode[] directives = {
             ADDRR, ADDRX, ANDRR, ANDRX, BEQRR, BEQRI, BNERR, BNERI, CALL, CMPRR, CMPRX, DIV,
             HLT, JMPRR, JMPRX, JNZ, JP, JZ, MUL, NOT, ORRR, ORRX, POP, POPF, POPRR, POPRX, PUSH,
             PUSHF, READ, RET, STRRR, STRRX, SUB, SUBRR, SUBRX, SUBRI, WRITE, XORRI, XORRR,
     };
 
-    Memory memory = new Memory();
-    ArrayList<SymbolTableEntry> symbolTable = new ArrayList<>();
+    static final OpCodeIndex opCodeIndex = new OpCodeIndex(directives);
+    private static final DispatchTable dispatchTable = new DispatchTable();
+
+    Memory memory;
+    Dispatch dispatch;
+    SymbolTable symbolTable = new SymbolTable();
 
     HashMap<String, Short> registers = new HashMap<>() {{
         put("ax", Memory.AX);
         put("dx", Memory.DX);
     }};
+    NameTable names = new NameTable();
+    OperandLexer lexer = new OperandLexer(names, registers);
     List<Instruction> instructions = new ArrayList<>();
 
     short locationCounter = 0; // LC
+    private InstructionStream stream; // decoded on the first run(quantum)
+    private boolean profiling;
+    private Profile profile;
+
+    public Program() {
+        this(Dispatch.FUSED);
+    }
+
+    public Program(Dispatch dispatch) {
+        this(dispatch, new Memory());
+    }
+
+    public Program(Dispatch dispatch, Memory memory) {
+        this.dispatch = dispatch;
+        this.memory = memory;
+    }
 
     public IntermediateFile firstPass(List<ParsedLine> lines) {
+        var event = new FirstPassEvent();
+        event.begin();
+        long start = System.nanoTime();
+
         locationCounter = 0;
 
         for (var line : lines) {
-            storeLineSymbols(line);
-
-            if (isDefiningASymbol(line)) continue;
+            assemble(line);
+        }
 
-            storeOp(line);
-            updateArgSymbols(line);
+        var intermediateFile = intermediateFile();
 
-            locationCounter++;
+        event.end();
+        if (event.shouldCommit()) {
+            event.lines = lines.size();
+            event.instructions = intermediateFile.instructions.size();
+            event.assemblingTime = System.nanoTime() - start;
+            event.commit();
         }
 
+        return intermediateFile;
+    }
+
+    /**
+     * Runs the first pass over a single line, for front ends that stream lines in.
+     */
+    public void assemble(ParsedLine line) {
+        var operands = new ArrayList<Operand>(line.args.size());
+        for (var arg : line.args) operands.add(lexer.lex(arg));
+
+        storeLineSymbols(line, operands);
+
+        if (isDefiningASymbol(line)) return;
+
+        storeOp(line, operands);
+        updateArgSymbols(operands);
+
+        locationCounter++;
+    }
+
+    public IntermediateFile intermediateFile() {
         return new IntermediateFile(symbolTable, instructions);
     }
 
-    private void storeOp(ParsedLine line) {
+    private void storeOp(ParsedLine line, List<Operand> operands) {
         var op = new Instruction();
-        var type = line.args.size() > 0 ? opType(line.args.get(0)) : OpCode.Type.RegisterRegister;
+        var type = operands.size() > 0 ? operands.get(0).type : OpCode.Type.RegisterRegister;
         op.op = findOpCode(line.instruction, type);
 
-        line.args.forEach(arg -> op.args.add(parseArg(arg)));
+        operands.forEach(arg -> op.args.add(parseArg(arg)));
 
         instructions.add(op);
     }
 
-    private short parseArg(String arg) {
-        return switch (opType(arg)) {
-            case RegisterRegister -> registers.get(arg);
-            case RegisterIndex -> symbolOffset(getSymbol(arg));
-            case RegisterImmediate -> Short.parseShort(arg);
+    private short parseArg(Operand arg) {
+        return switch (arg.type) {
+            case RegisterRegister, RegisterImmediate -> arg.value();
+            case RegisterIndex -> symbolOffset(getSymbol(arg.id));
         };
     }
 
-    private OpCode.Type opType(String arg) {
-        if (isNumeric(arg)) {
-            return OpCode.Type.RegisterImmediate;
-        } else if (isKnownRegister(arg)) {
-            return OpCode.Type.RegisterRegister;
-        } else {
-            return OpCode.Type.RegisterIndex;
-        }
-    }
-
-
-    private void updateArgSymbols(ParsedLine line) {
-        line.args.forEach(symbol -> {
+    private void updateArgSymbols(List<Operand> operands) {
+        operands.forEach(symbol -> {
             if (!shouldUpdateArgSymbol(symbol)) return;
 
-            var s = getSymbol(symbol);
+            var s = getSymbol(symbol.id);
             if (s.isUndefined()) s.setValue(locationCounter);
         });
     }
 
-    private void storeLineSymbols(ParsedLine line) {
-        if (line.hasLabel()) defineLabel(line.label);
+    private void storeLineSymbols(ParsedLine line, List<Operand> operands) {
+        if (line.hasLabel()) defineLabel(names.intern(line.label), line.label);
 
         if (isDefiningASymbol(line)) {
-            var symbol = getSymbol(line.instruction);
-            var value = Short.parseShort(line.args.get(0));
+            var id = names.intern(line.instruction);
+            var symbol = getSymbol(id);
+            var value = operands.get(0).value();
 
             if (symbol == null) {
-                var s = new SymbolTableEntry(line.instruction, value);
-                s.setValue(Short.parseShort(line.args.get(0)));
+                var s = new SymbolTableEntry(id, line.instruction, value);
+                s.setValue(value);
                 s.setDefined();
                 putSymbol(s);
             } else {
@@ -135,53 +175,37 @@ public class Program {
             }
         }
 
-        line.args.forEach(symbol -> {
-            if (shouldStoreArgSymbol(symbol)) putSymbol(new SymbolTableEntry(symbol));
+        operands.forEach(symbol -> {
+            if (shouldStoreArgSymbol(symbol)) putSymbol(new SymbolTableEntry(symbol.id, symbol.text));
         });
     }
 
-    private boolean shouldStoreArgSymbol(String symbol) {
-        return isSymbol(symbol) && !hasSymbol(symbol);
+    private boolean shouldStoreArgSymbol(Operand symbol) {
+        return symbol.isSymbol() && !hasSymbol(symbol.id);
     }
 
-    private boolean shouldUpdateArgSymbol(String symbol) {
-        return isSymbol(symbol) && hasSymbol(symbol);
-    }
-
-    private boolean isSymbol(String contender) {
-        return !isNumeric(contender) && !isKnownRegister(contender);
+    private boolean shouldUpdateArgSymbol(Operand symbol) {
+        return symbol.isSymbol() && hasSymbol(symbol.id);
     }
 
     private boolean isDefiningASymbol(ParsedLine line) {
         return !isKnownOp(line.instruction);
     }
 
-    private boolean hasSymbol(String symbol) {
-        for (var entry : symbolTable) {
-            if (entry.name.equals(symbol)) return true;
-        }
-
-        return false;
+    private boolean hasSymbol(int id) {
+        return symbolTable.contains(id);
     }
 
-    private SymbolTableEntry getSymbol(String symbol) {
-        for (var s : symbolTable) {
-            if (s.name.equals(symbol)) return s;
-        }
-
-        return null;
+    private SymbolTableEntry getSymbol(int id) {
+        return symbolTable.get(id);
     }
 
     private short symbolOffset(SymbolTableEntry symbol) {
-        for (short i = 0; i < symbolTable.size(); i++) {
-            if (symbolTable.get(i) == symbol) return i;
-        }
-
-        return -1;
+        return symbolTable.offsetOf(symbol);
     }
 
     private void putSymbol(SymbolTableEntry s) {
-        symbolTable.add(s);
+        symbolTable.put(s);
     }
 
     public void secondPass(IntermediateFile intermediateFile) {
@@ -189,7 +213,28 @@ public class Program {
         execute();
     }
 
-    private void loadIntoMemory(IntermediateFile intermediateFile) {
+    /**
+     * Runs a program previously written with {@link ObjectFile#write}.
+     */
+    public void secondPass(Path objectFile) throws IOException {
+        ObjectFile.load(objectFile, memory);
+        execute();
+    }
+
+    /**
+     * Continues a run from a {@link Memory#snapshot(Path)}, or starts one from a prepared image.
+     */
+    public void resume(Path snapshot) throws IOException {
+        memory.restore(snapshot);
+        execute();
+    }
+
+    void loadIntoMemory(IntermediateFile intermediateFile) {
+        var event = new LoadEvent();
+        event.begin();
+
+        symbolTable = intermediateFile.symbolTable; // the one the labels in memory came from, for the profiler
+
         for (SymbolTableEntry symbol : intermediateFile.symbolTable) {
             memory.storeSymbol(symbol.getValue());
         }
@@ -198,22 +243,23 @@ public class Program {
             memory.storeOp(instruction.op.opcode, instruction.args.get(0));
         }
 
+        memory.codeEnd = memory.ip;
         memory.ip = memory.opStart;
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.symbols = intermediateFile.symbolTable.size();
+            event.instructions = intermediateFile.instructions.size();
+            event.commit();
+        }
     }
 
     private OpCode findOpCode(String op, OpCode.Type type) {
-        return Arrays.stream(directives)
-                .filter(d -> d.mnemonic.equals(op) && d.type == type)
-                .findFirst()
-                .orElse(null);
+        return opCodeIndex.find(op, type);
     }
 
     public OpCode findOpByCode(byte opcode) {
-        return Arrays.stream(directives)
-                .filter(d -> d.opcode == opcode)
-                .findFirst()
-                .orElse(null);
-
+        return opCodeIndex.find(opcode);
     }
 
 
@@ -226,9 +272,166 @@ public class Program {
         return instruction;
     }
 
-    private void execute() {
+    void execute() {
+        var event = new ExecuteEvent();
+        event.begin();
+
+        long instructions;
+        if (profiling) {
+            executeProfiled();
+            instructions = profile.instructions();
+        } else {
+            instructions = switch (dispatch) {
+                case TABLE -> executeTable(InstructionStream.decode(memory, dispatchTable));
+                case FUSED -> executeTable(fused(InstructionStream.decode(memory, dispatchTable)));
+                case COMPILED -> executeCompiled();
+                case CHAIN -> executeChain();
+            };
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.dispatch = profiling ? "PROFILED" : dispatch.name();
+            event.instructions = instructions;
+            event.commit();
+        }
+    }
+
+    /**
+     * Makes the following executions run the profiling loop, with the dispatch table, whatever the dispatch.
+     */
+    public void enableProfiling() {
+        profiling = true;
+    }
+
+    /**
+     * What the last profiled execution recorded, or null if there was none.
+     */
+    public Profile profile() {
+        return profile;
+    }
+
+    // same as executeTable, plus the bookkeeping; kept apart so the plain loop pays nothing for it
+    private void executeProfiled() {
+        var stream = InstructionStream.decode(memory, dispatchTable);
+        var handlers = stream.handlers;
+        var operands = stream.operands;
+        var opcodes = stream.opcodes;
+
+        // labels are only known when the program was assembled here, not loaded from an object file
+        var labels = new String[opcodes.length];
+        for (var symbol : symbolTable) {
+            if (symbol.isLabel() && symbol.getValue() >= 0 && symbol.getValue() < labels.length) {
+                labels[symbol.getValue()] = symbol.name;
+            }
+        }
+        profile = new Profile(opCodeIndex, labels);
+
+        while (!memory.isHalted()) {
+            int pc = (memory.ip - memory.opStart) >> 1;
+            short next = (short) (memory.ip + 2);
+            short opcode = opcodes[pc];
+
+            // a jump to the next instruction leaves ip where it would have been anyway, so ask the flags
+            boolean branch = opcode == JP.opcode || opcode == JZ.opcode || opcode == JNZ.opcode;
+            boolean taken = branch && isTaken(opcode, memory.getSr());
+
+            memory.ip = next;
+            profile.instruction(pc, opcode);
+            handlers[pc].execute(memory, operands[pc]);
+
+            if (branch) {
+                profile.branch(pc, taken);
+            } else if (opcode == CALL.opcode) {
+                profile.call((memory.ip - memory.opStart) >> 1);
+            } else if (opcode == RET.opcode) {
+                profile.ret();
+            }
+        }
+    }
+
+    private static boolean isTaken(short opcode, short sr) {
+        if (opcode == JZ.opcode) return (sr & Memory.ZERO) != 0;
+        if (opcode == JNZ.opcode) return (sr & Memory.ZERO) == 0;
+        return (sr & Memory.SIGN) == 0; // jp
+    }
+
+    /**
+     * @return how many dispatches ran, a superinstruction counting once
+     */
+    private long executeTable(InstructionStream stream) {
+        var handlers = stream.handlers;
+        var operands = stream.operands;
+
+        long steps = 0;
+        while (!memory.isHalted()) {
+            int pc = (memory.ip - memory.opStart) >> 1;
+            memory.ip += 2;
+            handlers[pc].execute(memory, operands[pc]);
+            steps++;
+        }
+
+        return steps;
+    }
+
+    /**
+     * Runs the program as a {@link GuestCompiler} hidden class, interpreting what it doesn't compile.
+     *
+     * @return how many instructions ran
+     */
+    private long executeCompiled() {
+        var stream = InstructionStream.decode(memory, dispatchTable);
+        var compiled = GuestCompiler.compile(stream, memory);
+        if (compiled == null) return executeTable(fused(stream));
+
+        var handlers = stream.handlers;
+        var operands = stream.operands;
+
+        long steps = 0;
+        while (true) {
+            steps += compiled.run(memory);
+            if (memory.isHalted()) return steps;
+
+            // stopped at an instruction it left to the interpreter: run that one, then go back in
+            int pc = (memory.ip - memory.opStart) >> 1;
+            memory.ip += 2;
+            handlers[pc].execute(memory, operands[pc]);
+            steps++;
+            if (memory.isHalted()) return steps;
+        }
+    }
+
+    /**
+     * Runs at most quantum instructions with the dispatch table, so a scheduler can interleave programs.
+     * The program must already be loaded into memory.
+     *
+     * @return how many dispatches ran (a superinstruction counting once), less than quantum only when the program halted
+     */
+    int run(int quantum) {
+        if (stream == null) {
+            stream = InstructionStream.decode(memory, dispatchTable);
+            if (dispatch == Dispatch.FUSED) fused(stream);
+        }
+        var handlers = stream.handlers;
+        var operands = stream.operands;
+
+        int steps = 0;
+        while (steps < quantum && !memory.isHalted()) {
+            int pc = (memory.ip - memory.opStart) >> 1;
+            memory.ip += 2;
+            handlers[pc].execute(memory, operands[pc]);
+            steps++;
+        }
+
+        return steps;
+    }
+
+    // reference implementation, kept to check the dispatch table against
+    private long executeChain() {
+        long steps = 0;
         while (true) {
             Instruction instruction = readInstructionFromMemory();
+            steps++;
             if (instruction == null) {
                 memory.hlt();
                 break;
@@ -240,12 +443,15 @@ public class Program {
                 memory.add(address);
             } else if (ANDRR.equals(instruction.op)) {
             } else if (ANDRX.equals(instruction.op)) {
-                memory.and(registers.get("rx"));
+                short address = memory.symbolAddress(instruction.args.get(0));
+                memory.and(address);
             } else if (BEQRR.equals(instruction.op)) {
             } else if (BEQRI.equals(instruction.op)) {
             } else if (BNERR.equals(instruction.op)) {
             } else if (BNERI.equals(instruction.op)) {
             } else if (CALL.equals(instruction.op)) {
+                short address = memory.symbolAddress(instruction.args.get(0));
+                memory.call(address);
             } else if (CMPRR.equals(instruction.op)) {
             } else if (CMPRX.equals(instruction.op)) {
                 short address = memory.symbolAddress(instruction.args.get(0));
@@ -259,22 +465,31 @@ public class Program {
                 short address = memory.symbolAddress(instruction.args.get(0));
                 memory.jmp(address);
             } else if (JNZ.equals(instruction.op)) {
+                short address = memory.symbolAddress(instruction.args.get(0));
+                memory.jnz(address);
             } else if (JP.equals(instruction.op)) {
                 short address = memory.symbolAddress(instruction.args.get(0));
                 memory.jp(address);
             } else if (JZ.equals(instruction.op)) {
+                short address = memory.symbolAddress(instruction.args.get(0));
+                memory.jz(address);
             } else if (MUL.equals(instruction.op)) {
             } else if (NOT.equals(instruction.op)) {
             } else if (ORRR.equals(instruction.op)) {
             } else if (ORRX.equals(instruction.op)) {
             } else if (POP.equals(instruction.op)) {
             } else if (POPF.equals(instruction.op)) {
+                memory.popf();
             } else if (POPRR.equals(instruction.op)) {
             } else if (POPRX.equals(instruction.op)) {
             } else if (PUSH.equals(instruction.op)) {
             } else if (PUSHF.equals(instruction.op)) {
+                memory.pushf();
             } else if (READ.equals(instruction.op)) {
+                short address = memory.symbolAddress(instruction.args.get(0));
+                memory.read(address);
             } else if (RET.equals(instruction.op)) {
+                memory.ret();
             } else if (STRRR.equals(instruction.op)) {
             } else if (STRRX.equals(instruction.op)) {
                 short address = memory.symbolAddress(instruction.args.get(0));
@@ -291,17 +506,21 @@ public class Program {
             } else if (XORRR.equals(instruction.op)) {
             }
         }
+
+        return steps;
     }
 
-    private void defineLabel(String name) {
-        if (hasSymbol(name)) {
-            SymbolTableEntry entry = getSymbol(name);
+    private void defineLabel(int id, String name) {
+        if (hasSymbol(id)) {
+            SymbolTableEntry entry = getSymbol(id);
             entry.setValue(locationCounter);
             entry.setDefined();
+            entry.setLabel();
         } else {
-            SymbolTableEntry entry = new SymbolTableEntry(name);
+            SymbolTableEntry entry = new SymbolTableEntry(id, name);
             entry.setValue(locationCounter);
             entry.setDefined();
+            entry.setLabel();
             putSymbol(entry);
         }
 
@@ -324,10 +543,18 @@ public class Program {
     }
 
     private boolean isKnownOp(String op) {
-        return Arrays.stream(directives).anyMatch(d -> d.mnemonic.equals(op));
+        return opCodeIndex.isMnemonic(op);
     }
 
-    private boolean isKnownRegister(String name) {
-        return registers.containsKey(name);
+    private static InstructionStream fused(InstructionStream stream) {
+        Superinstructions.fuse(stream);
+        return stream;
     }
+
+    /**
+     * The execution engine. TABLE runs every instruction through the dispatch table, FUSED does the same
+     * after fusing common sequences into {@link Superinstructions}, COMPILED translates the program to JVM
+     * bytecode with {@link GuestCompiler}, and CHAIN is the original if/else chain.
+     */
+    enum Dispatch {TABLE, FUSED, COMPILED, CHAIN}
 }
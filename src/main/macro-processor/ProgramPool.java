@@ -0,0 +1,67 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs many independent programs in the same JVM, each with its own {@link Memory} and I/O.
+ * Runs go to virtual threads when the JVM has them, and to a cached thread pool otherwise.
+ */
+public class ProgramPool implements AutoCloseable {
+    private final ExecutorService executor;
+
+    public ProgramPool() {
+        this(newExecutor());
+    }
+
+    public ProgramPool(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Assembles and runs the source file.
+     *
+     * @return the memory of the run once it halts
+     */
+    public CompletableFuture<Memory> submit(String sourceFile, InputStream in, PrintStream out) {
+        return CompletableFuture.supplyAsync(() -> {
+            var program = new Program(Program.Dispatch.FUSED, new Memory(in, out));
+
+            try (var assembler = new AssemblerSink(program)) {
+                new MacroProcessor(sourceFile).process(assembler);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            program.secondPass(program.intermediateFile());
+            return program.memory;
+        }, executor);
+    }
+
+    /**
+     * Waits for the submitted runs to finish. Interrupted, it stops them instead and keeps the interrupt flag set.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ExecutorService newExecutor() {
+        try {
+            var factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
@@ -1,30 +1,104 @@
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.stream.Collectors;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class Runner {
     public static void main(String[] args) throws IOException {
-        String inputFile = "src/main/resources/program.asm";
-        var program = new MacroProcessor(inputFile).processMacro();
-        var lines = clean(program).stream().map(ParsedLine::fromLine).collect(Collectors.toList());
+        // -Dprofile=<prefix> writes <prefix>.txt and <prefix>.collapsed (flame graph input)
+        String profileOutput = System.getProperty("profile");
 
-        Program p = new Program();
-        var intermediateFile = p.firstPass(lines);
-        p.secondPass(intermediateFile);
+        // -Dguest.in=<file> and -Dguest.out=<file> take the guest's READ and WRITE off the console
+        try (var io = GuestIO.files(path("guest.in"), path("guest.out"))) {
+            // -Dengine=table|fused|compiled|chain
+            var engine = Program.Dispatch.valueOf(System.getProperty("engine", "fused").toUpperCase());
+            var program = new Program(engine, new Memory(io));
+            if (profileOutput != null) program.enableProfiling();
+
+            run(args, program);
+
+            if (profileOutput != null && program.profile() != null) {
+                try (var report = Files.newBufferedWriter(Path.of(profileOutput + ".txt"));
+                     var stacks = Files.newBufferedWriter(Path.of(profileOutput + ".collapsed"))) {
+                    program.profile().writeReport(report);
+                    program.profile().writeCollapsedStacks(stacks);
+                }
+            }
+        }
     }
 
-    private static ArrayList<String> clean(ArrayList<String> program) {
-        var result = new ArrayList<String>();
+    private static Path path(String property) {
+        var value = System.getProperty(property);
+        return value == null ? null : Path.of(value);
+    }
 
-        for (String line : program) {
-            line = line.trim().toLowerCase();
-            if (line.isEmpty()) continue;
+    private static void run(String[] args, Program program) throws IOException {
+        // -Doptimize (or -Doptimize=true) runs the Optimizer between the passes
+        var optimizeValue = System.getProperty("optimize");
+        boolean optimize = optimizeValue != null && (optimizeValue.isEmpty() || Boolean.parseBoolean(optimizeValue));
+        // -Dmacro.library=<file> makes the macros of a compiled MacroLibrary available to every source file
+        var libraryFile = path("macro.library");
+        var library = libraryFile == null ? null : MacroLibrary.open(libraryFile);
 
-            line = line.replaceAll("\s+", " ");
+        if (args.length > 1) {
+            var linked = new ParallelAssembler(ForkJoinPool.commonPool(), library).assemble(List.of(args));
+            program.secondPass(optimize ? optimize(linked) : linked);
+            return;
+        }
 
-            result.add(line);
+        String inputFile = args.length > 0 ? args[0] : "src/main/resources/program.asm";
+        var cache = new AssemblyCache(
+                Path.of(System.getProperty("assembly.cache.dir", "target/assembly-cache")),
+                Long.getLong("assembly.cache.maxSize", AssemblyCache.DEFAULT_MAX_SIZE)
+        );
+
+        var key = AssemblyCache.key(Path.of(inputFile)) + (library == null ? "" : "-" + library.hash());
+        var optimizedKey = key + "-optimized";
+        // an optimized program is cached next to the one it came from, which has the count before optimizing
+        var cached = cache.lookup(optimize ? optimizedKey : key);
+        var unoptimized = optimize ? cache.lookup(key) : cached;
+        if (cached != null && unoptimized != null) {
+            try {
+                if (optimize) {
+                    printOptimized(ObjectFile.instructionCount(unoptimized), ObjectFile.instructionCount(cached));
+                }
+                program.secondPass(cached);
+                return;
+            } catch (IOException e) {
+                // unreadable or evicted meanwhile, assemble it again
+            }
+        }
+
+        try (var assembler = new AssemblerSink(program)) {
+            new MacroProcessor(inputFile, library).process(assembler);
         }
 
-        return result;
+        var intermediateFile = program.intermediateFile();
+        store(cache, key, intermediateFile, inputFile);
+        if (optimize) {
+            intermediateFile = optimize(intermediateFile);
+            store(cache, optimizedKey, intermediateFile, inputFile);
+        }
+
+        program.secondPass(intermediateFile);
+    }
+
+    private static void store(AssemblyCache cache, String key, IntermediateFile intermediateFile, String inputFile) {
+        try {
+            cache.store(key, intermediateFile);
+        } catch (IOException e) {
+            System.err.println("couldn't cache " + inputFile + ": " + e.getMessage());
+        }
+    }
+
+    private static IntermediateFile optimize(IntermediateFile program) {
+        var optimized = Optimizer.optimize(program);
+        printOptimized(program.instructions.size(), optimized.instructions.size());
+        return optimized;
+    }
+
+    private static void printOptimized(int before, int after) {
+        System.err.printf("optimizer: %d -> %d instructions%n", before, after);
     }
 }
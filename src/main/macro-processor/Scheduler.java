@@ -0,0 +1,174 @@
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time-slices many programs over a fixed pool of carrier threads.
+ * <p>
+ * A program runs for a quantum of instructions, then goes back to the end of the run queue,
+ * so a program that never halts can't hold a carrier. Each program also has a total step
+ * budget; a program that uses it up fails with a {@link StepBudgetExceededException}.
+ */
+public class Scheduler implements AutoCloseable {
+    private final int quantum;
+    private final ThreadPoolExecutor carriers;
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong runTimeNanos = new AtomicLong();
+
+    public Scheduler(int carrierThreads, int quantum) {
+        if (quantum <= 0) throw new IllegalArgumentException("want a positive quantum, given: " + quantum);
+
+        this.quantum = quantum;
+        this.carriers = new ThreadPoolExecutor(
+                carrierThreads, carrierThreads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>()
+        );
+    }
+
+    /**
+     * Loads the program into the memory and queues it.
+     */
+    public Run submit(IntermediateFile intermediateFile, Memory memory, long stepBudget) {
+        var program = new Program(Program.Dispatch.TABLE, memory);
+        program.loadIntoMemory(intermediateFile);
+
+        var run = new Run(program, stepBudget);
+        carriers.execute(new Slice(run));
+        return run;
+    }
+
+    /**
+     * Programs waiting for a carrier.
+     */
+    public int queueDepth() {
+        return carriers.getQueue().size();
+    }
+
+    /**
+     * Runs that are over: halted, failed, out of budget or cancelled.
+     */
+    public long completed() {
+        return completed.get();
+    }
+
+    /**
+     * Time spent running programs, summed over all carriers.
+     */
+    public long runTimeNanos() {
+        return runTimeNanos.get();
+    }
+
+    /**
+     * Cancels the runs that haven't halted yet: the queued ones right away, the running ones at the end of
+     * their slice, which this waits for. Interrupted, it stops waiting and keeps the interrupt flag set.
+     */
+    @Override
+    public void close() {
+        for (var slice : carriers.shutdownNow()) ((Slice) slice).target.stop();
+
+        try {
+            carriers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // what the carriers queue, so close can tell which runs it takes off the queue
+    private record Slice(Run target) implements Runnable {
+        @Override
+        public void run() {
+            target.slice();
+        }
+    }
+
+    public class Run {
+        private final Program program;
+        private final long stepBudget;
+        private final CompletableFuture<Memory> result = new CompletableFuture<>();
+        private volatile long steps;
+        private volatile long runTimeNanos;
+
+        private Run(Program program, long stepBudget) {
+            this.program = program;
+            this.stepBudget = stepBudget;
+        }
+
+        /**
+         * Completes with the memory once the program halts.
+         */
+        public CompletableFuture<Memory> result() {
+            return result;
+        }
+
+        /**
+         * Stops the program at its next slice.
+         */
+        public void cancel() {
+            result.cancel(false);
+        }
+
+        public long steps() {
+            return steps;
+        }
+
+        public long runTimeNanos() {
+            return runTimeNanos;
+        }
+
+        // keeps what a failed or stopped run wrote, its result already tells how it ended
+        private void flush() {
+            try {
+                program.memory.flush();
+            } catch (UncheckedIOException e) {
+                // nothing left to report it to
+            }
+        }
+
+        // a run that won't get another slice: cancelled while queued, or the scheduler closed
+        private void stop() {
+            result.cancel(false);
+            flush();
+            completed.incrementAndGet();
+        }
+
+        // only ever runs on one carrier at a time, the next slice is queued at the end of this one
+        private void slice() {
+            if (result.isDone()) { // cancelled while queued
+                stop();
+                return;
+            }
+
+            long start = System.nanoTime();
+            try {
+                int slice = (int) Math.min(quantum, stepBudget - steps);
+                steps += program.run(slice);
+            } catch (RuntimeException | Error e) {
+                result.completeExceptionally(e);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                runTimeNanos += elapsed;
+                Scheduler.this.runTimeNanos.addAndGet(elapsed);
+            }
+
+            if (program.memory.isHalted()) {
+                result.complete(program.memory);
+            } else if (steps >= stepBudget) {
+                result.completeExceptionally(new StepBudgetExceededException(stepBudget));
+            }
+
+            if (result.isDone()) {
+                if (!program.memory.isHalted()) flush(); // halting flushed already
+                completed.incrementAndGet();
+            } else {
+                try {
+                    carriers.execute(new Slice(this));
+                } catch (RejectedExecutionException e) { // closed during this slice
+                    stop();
+                }
+            }
+        }
+    }
+}
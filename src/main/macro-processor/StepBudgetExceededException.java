@@ -0,0 +1,7 @@
+public class StepBudgetExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public StepBudgetExceededException(long stepBudget) {
+        super("program didn't halt within " + stepBudget + " steps");
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Load-time pass over an {@link InstructionStream} that replaces the handler of every instruction starting
+ * a common sequence (cmp + jp, add + store + write, ...) with one that runs the whole sequence in a single
+ * dispatch, through the matching method in {@link Memory}.
+ * <p>
+ * Nothing is removed from the stream: the instructions after the first keep their own handlers (or start
+ * sequences of their own), so a jump into the middle of a sequence runs exactly what it did before.
+ * A fused handler moves ip past each part the way the separate instructions would, and stops at a taken jump.
+ */
+class Superinstructions {
+    @FunctionalInterface
+    private interface Fuser {
+        OpHandler fuse(short[] operands, int at);
+    }
+
+    private record Pattern(short[] opcodes, Fuser fuser) {
+        boolean matches(short[] stream, int at) {
+            if (at + opcodes.length > stream.length) return false;
+
+            for (int i = 0; i < opcodes.length; i++) {
+                if (stream[at + i] != opcodes[i]) return false;
+            }
+            return true;
+        }
+    }
+
+    // longest first, the first match wins; picked from the loops in program.asm and the benchmark workloads
+    private static final Pattern[] patterns = {
+            pattern((operands, at) -> {
+                short elseTarget = operands[at + 2];
+                short target = operands[at + 1];
+                return (memory, address) -> memory.cmpJpJmp(address, target, elseTarget);
+            }, Program.CMPRX, Program.JP, Program.JMPRX),
+            pattern((operands, at) -> {
+                short written = operands[at + 2];
+                short destination = operands[at + 1];
+                return (memory, address) -> memory.addStoreWrite(address, destination, written);
+            }, Program.ADDRX, Program.STRRX, Program.WRITE),
+            pattern((operands, at) -> {
+                short target = operands[at + 1];
+                return (memory, address) -> memory.cmpJp(address, target);
+            }, Program.CMPRX, Program.JP),
+            pattern((operands, at) -> {
+                short target = operands[at + 1];
+                return (memory, address) -> memory.cmpJz(address, target);
+            }, Program.CMPRX, Program.JZ),
+            pattern((operands, at) -> {
+                short target = operands[at + 1];
+                return (memory, address) -> memory.cmpJnz(address, target);
+            }, Program.CMPRX, Program.JNZ),
+            pattern((operands, at) -> {
+                short destination = operands[at + 1];
+                return (memory, address) -> memory.addStore(address, destination);
+            }, Program.ADDRX, Program.STRRX),
+            pattern((operands, at) -> {
+                short destination = operands[at + 1];
+                return (memory, address) -> memory.subStore(address, destination);
+            }, Program.SUBRX, Program.STRRX),
+            pattern((operands, at) -> {
+                short written = operands[at + 1];
+                return (memory, destination) -> memory.storeWrite(destination, written);
+            }, Program.STRRX, Program.WRITE),
+    };
+
+    private Superinstructions() {
+    }
+
+    /**
+     * Fuses the stream in place.
+     *
+     * @return how many instructions now start a superinstruction
+     */
+    static int fuse(InstructionStream stream) {
+        var opcodes = stream.opcodes;
+        int fused = 0;
+
+        for (int at = 0; at < opcodes.length; at++) {
+            for (var pattern : patterns) {
+                if (pattern.matches(opcodes, at)) {
+                    stream.handlers[at] = pattern.fuser.fuse(stream.operands, at);
+                    fused++;
+                    break;
+                }
+            }
+        }
+
+        return fused;
+    }
+
+    private static Pattern pattern(Fuser fuser, OpCode... ops) {
+        var opcodes = new short[ops.length];
+        for (int i = 0; i < ops.length; i++) opcodes[i] = ops[i].opcode;
+        return new Pattern(opcodes, fuser);
+    }
+}
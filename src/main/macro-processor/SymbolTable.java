@@ -0,0 +1,64 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Symbols in insertion order, which is also the order they are laid out in memory,
+ * indexed by the interned id of their name so lookups don't scan the whole table.
+ */
+class SymbolTable implements Iterable<SymbolTableEntry> {
+    private static final short ABSENT = -1;
+    static final int MAX_SIZE = Short.MAX_VALUE + 1; // offsets are instruction operands, so they must fit a short
+
+    private final ArrayList<SymbolTableEntry> entries = new ArrayList<>();
+    private short[] offsets = new short[64]; // by name id
+
+    SymbolTable() {
+        Arrays.fill(offsets, ABSENT);
+    }
+
+    boolean contains(int id) {
+        return offset(id) != ABSENT;
+    }
+
+    SymbolTableEntry get(int id) {
+        var offset = offset(id);
+        return offset == ABSENT ? null : entries.get(offset);
+    }
+
+    SymbolTableEntry atOffset(short offset) {
+        return entries.get(offset);
+    }
+
+    short offsetOf(SymbolTableEntry entry) {
+        return offset(entry.id);
+    }
+
+    void put(SymbolTableEntry entry) {
+        if (entries.size() == MAX_SIZE) {
+            throw new Error("too many symbols: at most " + MAX_SIZE + " fit in the symbol table, adding " + entry.name);
+        }
+
+        if (entry.id >= offsets.length) {
+            int length = offsets.length;
+            offsets = Arrays.copyOf(offsets, Math.max(length * 2, entry.id + 1));
+            Arrays.fill(offsets, length, offsets.length, ABSENT);
+        }
+
+        offsets[entry.id] = (short) entries.size();
+        entries.add(entry);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    @Override
+    public Iterator<SymbolTableEntry> iterator() {
+        return entries.iterator();
+    }
+
+    private short offset(int id) {
+        return id < offsets.length ? offsets[id] : ABSENT;
+    }
+}
@@ -1,13 +1,17 @@
 class SymbolTableEntry {
+    final int id; // of the name, interned by the program's NameTable
     final String name;
     private short value;
     private Type type = Type.UNDEFINED;
+    private boolean label; // its value is an instruction index, which moves when programs are linked
 
-    public SymbolTableEntry(String name) {
+    public SymbolTableEntry(int id, String name) {
+        this.id = id;
         this.name = name;
     }
 
-    public SymbolTableEntry(String name, short value) {
+    public SymbolTableEntry(int id, String name, short value) {
+        this.id = id;
         this.name = name;
         this.value = value;
     }
@@ -32,6 +36,14 @@ class SymbolTableEntry {
         type = Type.MultiplyDefined;
     }
 
+    public boolean isLabel() {
+        return label;
+    }
+
+    public void setLabel() {
+        label = true;
+    }
+
     @Override
     public String toString() {
         return name + ": " + value + " (" + type + ')';
@@ -0,0 +1,69 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AssemblyCacheTest {
+    @Test
+    void keyChangesWithTheSource() throws IOException {
+        var source = Files.createTempFile("program", ".asm");
+
+        try {
+            Files.writeString(source, "a 1\n");
+            var key = AssemblyCache.key(source);
+            assertEquals(key, AssemblyCache.key(source));
+
+            Files.writeString(source, "a 2\n");
+            assertNotEquals(key, AssemblyCache.key(source));
+        } finally {
+            Files.delete(source);
+        }
+    }
+
+    @Test
+    void lookupFindsStoredPrograms() throws IOException {
+        var directory = Files.createTempDirectory("assembly-cache");
+        var cache = new AssemblyCache(directory, AssemblyCache.DEFAULT_MAX_SIZE);
+
+        try {
+            assertNull(cache.lookup("a"));
+
+            cache.store("a", Sources.assemble("a 1", "hlt ax"));
+
+            assertNotNull(cache.lookup("a"));
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    void storeEvictsTheLeastRecentlyUsedPrograms() throws IOException {
+        var directory = Files.createTempDirectory("assembly-cache");
+        var program = Sources.assemble("a 1", "hlt ax");
+
+        try {
+            new AssemblyCache(directory, Long.MAX_VALUE).store("old", program);
+            var old = directory.resolve("old.obj");
+            Files.setLastModifiedTime(old, FileTime.fromMillis(0));
+            long size = Files.size(old);
+
+            new AssemblyCache(directory, size).store("new", program);
+
+            assertFalse(Files.exists(old));
+            assertTrue(Files.exists(directory.resolve("new.obj")));
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    private static void deleteAll(Path directory) throws IOException {
+        try (var paths = Files.list(directory)) {
+            for (var path : paths.toList()) Files.delete(path);
+        }
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,74 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChannelIOTest {
+    @Test
+    void writeBuffersUntilFlushOrAFullBuffer() throws Exception {
+        var out = new ByteArrayOutputStream();
+        var io = new ChannelIO(Channels.newChannel(new ByteArrayInputStream(new byte[0])), Channels.newChannel(out), 14);
+
+        io.write((short) 7);
+        assertEquals(0, out.size());
+
+        io.write((short) -32768);
+        io.write((short) 32767); // doesn't fit with the others
+        assertEquals(String.format("7%n-32768%n"), out.toString());
+
+        io.flush();
+        assertEquals(String.format("7%n-32768%n32767%n"), out.toString());
+    }
+
+    @Test
+    void readReturnsBytesThenEndOfInput() throws Exception {
+        var io = GuestIO.of(new ByteArrayInputStream(new byte[]{'a', (byte) 200}), new ByteArrayOutputStream());
+
+        assertEquals('a', io.read());
+        assertEquals(200, io.read());
+        assertEquals(-1, io.read());
+    }
+
+    @Test
+    void readShowsThePromptBeforeWaitingForInput() {
+        var out = new ByteArrayOutputStream();
+        var shownBeforeRead = new StringBuilder();
+        var in = new InputStream() {
+            private final ByteArrayInputStream typed = new ByteArrayInputStream(new byte[]{'A'});
+
+            @Override
+            public int read() {
+                return typed.read();
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) {
+                shownBeforeRead.append(out);
+                return typed.read(buffer, offset, length);
+            }
+        };
+
+        var program = new Program(Program.Dispatch.TABLE, new Memory(in, out));
+        program.secondPass(Sources.assemble(program, List.of("prompt 63", "write prompt", "read c", "write c", "hlt ax")));
+
+        assertEquals(String.format("63%n"), shownBeforeRead.toString());
+        assertEquals(String.format("63%n65%n"), out.toString());
+    }
+
+    @Test
+    void haltFlushesTheGuestOutput() {
+        var out = new ByteArrayOutputStream();
+        var memory = new Memory(new ByteArrayInputStream(new byte[0]), out);
+
+        memory.write(memory.symbolAddress((short) 0));
+        assertEquals(0, out.size());
+
+        memory.hlt();
+        assertEquals(String.format("0%n"), out.toString());
+    }
+}
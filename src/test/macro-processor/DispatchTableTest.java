@@ -0,0 +1,43 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DispatchTableTest {
+    private static final List<String> SOURCE = List.of(
+            "one 1",
+            "mask 6",
+            "max 9",
+            "loop: add one",
+            "store n",
+            "and mask",
+            "store masked",
+            "write masked",
+            "add n",
+            "sub masked",
+            "cmp max",
+            "jz done",
+            "jmp loop",
+            "done: hlt ax"
+    );
+
+    @Test
+    void everyEngineRunsLikeTheChain() {
+        var chain = run(Program.Dispatch.CHAIN);
+        assertEquals(String.format("0%n2%n2%n4%n4%n6%n6%n0%n0%n"), chain);
+
+        for (var dispatch : Program.Dispatch.values()) {
+            assertEquals(chain, run(dispatch), dispatch.name());
+        }
+    }
+
+    private static String run(Program.Dispatch dispatch) {
+        var out = new ByteArrayOutputStream();
+        var program = new Program(dispatch, new Memory(new ByteArrayInputStream(new byte[0]), out));
+        program.secondPass(Sources.assemble(program, SOURCE));
+        return out.toString();
+    }
+}
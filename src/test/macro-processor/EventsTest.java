@@ -0,0 +1,68 @@
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventsTest {
+    private static final List<String> SOURCE = List.of(
+            "twice MACRO x",
+            "add x",
+            "add x",
+            "ENDM",
+            "one 1",
+            "twice one",
+            "store n",
+            "hlt ax"
+    );
+
+    @Test
+    void streamedAssemblyRecordsEveryStage() throws IOException {
+        var source = Files.createTempFile("program", ".asm");
+        var dump = Files.createTempFile("events", ".jfr");
+
+        try (var recording = new Recording()) {
+            Files.write(source, SOURCE);
+            recording.enable("macroprocessor.MacroProcess");
+            recording.enable("macroprocessor.MacroExpand");
+            recording.enable("macroprocessor.FirstPass");
+            recording.start();
+
+            try (var assembler = new AssemblerSink(new Program())) {
+                new MacroProcessor(source.toString()).process(assembler);
+            }
+
+            recording.stop();
+            recording.dump(dump);
+            var events = RecordingFile.readAllEvents(dump);
+
+            var process = only(events, "macroprocessor.MacroProcess");
+            assertEquals(source.toString(), process.getString("sourceFile"));
+            assertEquals(SOURCE.size(), process.getLong("linesRead"));
+            assertEquals(1, process.getLong("expansions"));
+
+            var expand = only(events, "macroprocessor.MacroExpand");
+            assertEquals("twice", expand.getString("macro"));
+            assertTrue(expand.getLong("outputLength") > 0);
+
+            var firstPass = only(events, "macroprocessor.FirstPass");
+            assertEquals(5, firstPass.getLong("lines"));
+            assertEquals(4, firstPass.getLong("instructions"));
+            assertTrue(firstPass.getDuration("assemblingTime").compareTo(firstPass.getDuration()) <= 0);
+        } finally {
+            Files.delete(source);
+            Files.delete(dump);
+        }
+    }
+
+    private static RecordedEvent only(List<RecordedEvent> events, String name) {
+        var found = events.stream().filter(event -> event.getEventType().getName().equals(name)).toList();
+        assertEquals(1, found.size(), name);
+        return found.get(0);
+    }
+}
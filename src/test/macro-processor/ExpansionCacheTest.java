@@ -0,0 +1,56 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpansionCacheTest {
+    private final Macro incr = new Macro("incr", 1, new String[]{"add ", ""}, new int[]{0});
+
+    @Test
+    void getCountsHitsAndMisses() {
+        var cache = new ExpansionCache(2);
+
+        assertNull(cache.get(incr, List.of("a")));
+        cache.put(incr, List.of("a"), new String[]{"add a"});
+
+        assertArrayEquals(new String[]{"add a"}, cache.get(incr, List.of("a")));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void putEvictsTheLeastRecentlyUsedEntry() {
+        var cache = new ExpansionCache(2);
+        cache.put(incr, List.of("a"), new String[]{"add a"});
+        cache.put(incr, List.of("b"), new String[]{"add b"});
+        cache.get(incr, List.of("a"));
+
+        cache.put(incr, List.of("c"), new String[]{"add c"});
+
+        assertEquals(1, cache.getEvictions());
+        assertNotNull(cache.get(incr, List.of("a")));
+        assertNull(cache.get(incr, List.of("b")));
+    }
+
+    @Test
+    void invalidateDropsOnlyTheMacroExpansions() {
+        var decr = new Macro("decr", 1, new String[]{"sub ", ""}, new int[]{0});
+        var cache = new ExpansionCache(4);
+        cache.put(incr, List.of("a"), new String[]{"add a"});
+        cache.put(decr, List.of("a"), new String[]{"sub a"});
+
+        cache.invalidate(incr);
+
+        assertNull(cache.get(incr, List.of("a")));
+        assertNotNull(cache.get(decr, List.of("a")));
+    }
+
+    @Test
+    void sizeZeroDisablesTheCache() {
+        var cache = new ExpansionCache(0);
+        cache.put(incr, List.of("a"), new String[]{"add a"});
+
+        assertEquals(0, cache.size());
+    }
+}
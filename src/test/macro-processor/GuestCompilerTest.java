@@ -0,0 +1,84 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GuestCompilerTest {
+    private static final List<String> CALLS = List.of(
+            "one 1",
+            "max 3",
+            "jmp loop",
+            "inc: add one",
+            "store n",
+            "ret ax",
+            "loop: call inc",
+            "write n",
+            "pushf ax",
+            "popf ax",
+            "cmp max",
+            "jp done",
+            "jmp loop",
+            "done: hlt ax"
+    );
+
+    // the compiler doesn't translate mul, so the compiled code hands it to the interpreter every time round
+    private static final List<String> UNCOMPILED = List.of(
+            "one 1",
+            "max 3",
+            "loop: add one",
+            "mul ax",
+            "store n",
+            "write n",
+            "cmp max",
+            "jz done",
+            "jmp loop",
+            "done: hlt ax"
+    );
+
+    @Test
+    void compiles() {
+        assertNotNull(compile(CALLS));
+        assertNotNull(compile(UNCOMPILED));
+    }
+
+    @Test
+    void codeTooBigForOneMethodIsLeftToTheInterpreter() {
+        var source = new ArrayList<String>();
+        source.add("one 1");
+        for (int i = 0; i < 1000; i++) source.add("call f");
+        source.add("write one");
+        source.add("hlt ax");
+        source.add("f: ret ax");
+
+        assertNull(compile(source));
+        assertEquals(String.format("1%n"), run(Program.Dispatch.COMPILED, source));
+    }
+
+    @Test
+    void compiledRunMatchesTheInterpreter() {
+        assertEquals(String.format("1%n2%n3%n"), run(Program.Dispatch.TABLE, CALLS));
+        assertEquals(run(Program.Dispatch.TABLE, CALLS), run(Program.Dispatch.COMPILED, CALLS));
+    }
+
+    @Test
+    void instructionsLeftToTheInterpreterStillRun() {
+        assertEquals(String.format("1%n2%n3%n"), run(Program.Dispatch.COMPILED, UNCOMPILED));
+    }
+
+    private static CompiledProgram compile(List<String> source) {
+        var program = new Program(Program.Dispatch.TABLE);
+        program.loadIntoMemory(Sources.assemble(program, source));
+        return GuestCompiler.compile(InstructionStream.decode(program.memory, new DispatchTable()), program.memory);
+    }
+
+    private static String run(Program.Dispatch dispatch, List<String> source) {
+        var out = new ByteArrayOutputStream();
+        var program = new Program(dispatch, new Memory(new ByteArrayInputStream(new byte[0]), out));
+        program.secondPass(Sources.assemble(program, source));
+        return out.toString();
+    }
+}
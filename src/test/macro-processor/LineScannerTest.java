@@ -0,0 +1,51 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineScannerTest {
+    private final LineScanner scanner = new LineScanner();
+
+    @Test
+    void scanCleansTheLine() {
+        assertEquals("store ab", scanner.scan("  Store \t AB  ").cleanedLine());
+    }
+
+    @Test
+    void scanWithOnlyWhitespaceIsBlank() {
+        assertTrue(scanner.scan(" \t ").isBlank());
+    }
+
+    @Test
+    void parsedLineHasEveryField() {
+        var line = scanner.scan("Exit:  hlt  ax , dx ; Done").parsedLine();
+
+        assertEquals("exit", line.label);
+        assertEquals("hlt", line.instruction);
+        assertEquals(List.of("ax", "dx"), line.args);
+        assertEquals("done", line.comment);
+    }
+
+    @Test
+    void parsedLineWithoutArgs() {
+        var line = scanner.scan("popf ; restore flags").parsedLine();
+
+        assertEquals("popf", line.instruction);
+        assertTrue(line.args.isEmpty());
+    }
+
+    @Test
+    void scanDetectsMacroKeywords() {
+        assertTrue(scanner.scan("incr MACRO x, y").isMacroDefinition());
+        assertFalse(scanner.isMacroEnd());
+
+        assertTrue(scanner.scan("ENDM").isMacroEnd());
+        assertFalse(scanner.isMacroDefinition());
+    }
+
+    @Test
+    void firstWordKeepsTheCaseOfTheRawLine() {
+        assertEquals("Incr", scanner.scan("Incr one, acc").firstWord());
+    }
+}
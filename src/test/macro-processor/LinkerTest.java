@@ -0,0 +1,53 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LinkerTest {
+    @Test
+    void linkRelocatesLabelsAndSymbolOperands() {
+        var main = Sources.assemble("one 1", "loop: add one", "jmp check");
+        var lib = Sources.assemble("check: add one", "jmp loop");
+
+        var linked = Linker.link(List.of(main, lib));
+
+        assertEquals(4, linked.instructions.size());
+        assertEquals(1, value(linked, "one"));
+        assertEquals(0, value(linked, "loop"));
+        assertEquals(2, value(linked, "check"));
+
+        // every operand points at the merged entry of its symbol
+        assertEquals("check", symbolOf(linked, linked.instructions.get(1)));
+        assertEquals("one", symbolOf(linked, linked.instructions.get(2)));
+        assertEquals("loop", symbolOf(linked, linked.instructions.get(3)));
+    }
+
+    @Test
+    void linkRejectsSymbolsDefinedTwice() {
+        var a = Sources.assemble("max 1", "add max");
+        var b = Sources.assemble("max 2", "add max");
+
+        assertThrows(LinkError.class, () -> Linker.link(List.of(a, b)));
+    }
+
+    @Test
+    void linkRejectsJumpsToLabelsNoProgramDefines() {
+        var main = Sources.assemble("one 1", "loop: add one", "store n", "jmp check");
+        var lib = Sources.assemble("add n", "jmp loop");
+
+        var error = assertThrows(LinkError.class, () -> Linker.link(List.of(main, lib)));
+        assertEquals("undefined labels: check", error.getMessage()); // n is storage, defined nowhere either
+    }
+
+    private static short value(IntermediateFile file, String name) {
+        for (var symbol : file.symbolTable) {
+            if (symbol.name.equals(name)) return symbol.getValue();
+        }
+        throw new AssertionError("no symbol " + name);
+    }
+
+    private static String symbolOf(IntermediateFile file, Instruction instruction) {
+        return file.symbolTable.atOffset(instruction.args.get(0)).name;
+    }
+}
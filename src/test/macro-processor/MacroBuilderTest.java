@@ -0,0 +1,34 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MacroBuilderTest {
+    @Test
+    void expandSubstitutesEveryParameter() {
+        var macro = build("incr MACRO x, y", "add x", "store y");
+
+        assertEquals("add one\nstore acc", macro.expand(List.of("one", "acc")));
+    }
+
+    @Test
+    void expandOnlySubstitutesWholeWords() {
+        var macro = build("m MACRO a", "add a", "store ax, a");
+
+        assertEquals("add b\nstore ax, b", macro.expand(List.of("b")));
+    }
+
+    @Test
+    void expandWithWrongNumberOfArgsThrows() {
+        var macro = build("incr MACRO x, y", "add x");
+
+        assertThrows(IllegalArgumentException.class, () -> macro.expand(List.of("one")));
+    }
+
+    private Macro build(String... lines) {
+        var builder = new MacroBuilder();
+        for (var line : lines) builder.parseLine(line);
+        return builder.build();
+    }
+}
@@ -0,0 +1,109 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MacroLibraryTest {
+    @Test
+    void getFindsEveryMacroAndDecodesItOnce() throws IOException {
+        var path = Files.createTempFile("macros", ".mpl");
+
+        try {
+            MacroLibrary.write(List.of(
+                    macro("incr MACRO x, y", "add x", "store y"),
+                    macro("clear MACRO x", "sub x"),
+                    macro("a\u00e7\u00e3o MACRO a", "write a")
+            ), path);
+            var library = MacroLibrary.open(path);
+            library.verify();
+
+            assertEquals(3, library.size());
+            assertEquals("add one\nstore acc", library.get("incr").expand(List.of("one", "acc")));
+            assertEquals("write n", library.get("a\u00e7\u00e3o").expand(List.of("n")));
+            assertSame(library.get("incr"), library.get("incr"));
+            assertNull(library.get("add"));
+            assertNull(library.get("add")); // remembered as missing this time
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    void processExpandsLibraryMacrosAndPrefersTheSourceOnes() throws IOException {
+        var libraryFile = Files.createTempFile("macros", ".mpl");
+        var source = Files.createTempFile("program", ".asm");
+
+        try {
+            MacroLibrary.write(List.of(macro("incr MACRO x, y", "add x", "store y"), macro("out MACRO x", "write x")), libraryFile);
+            Files.writeString(source, String.join("\n",
+                    "out MACRO x",
+                    "write x",
+                    "write x",
+                    "ENDM",
+                    "incr one, acc",
+                    "out acc"
+            ));
+
+            var lines = new ArrayList<String>();
+            new MacroProcessor(source.toString(), MacroLibrary.open(libraryFile)).process(LineSink.toList(lines));
+
+            assertEquals(List.of("add one", "store acc", "write acc", "write acc"), lines);
+        } finally {
+            Files.delete(libraryFile);
+            Files.delete(source);
+        }
+    }
+
+    @Test
+    void openRejectsOtherFiles() throws IOException {
+        var path = Files.createTempFile("macros", ".mpl");
+
+        try {
+            Files.writeString(path, "incr MACRO x, y");
+            assertThrows(IOException.class, () -> MacroLibrary.open(path));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    void verifyRejectsCorruptLibraries() throws Exception {
+        var path = Files.createTempFile("macros", ".mpl");
+
+        try {
+            MacroLibrary.write(List.of(macro("incr MACRO x, y", "add x", "store y")), path);
+            var library = Files.readAllBytes(path);
+            int header = 12 + 32;
+
+            var flipped = library.clone();
+            flipped[flipped.length - 1] ^= 1;
+            Files.write(path, flipped);
+            assertThrows(IOException.class, () -> MacroLibrary.open(path).verify());
+
+            // a body offset past the end, under a hash that matches
+            var outOfBounds = ByteBuffer.wrap(library.clone());
+            outOfBounds.putInt(header + 8, library.length);
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(outOfBounds.array(), header, library.length - header);
+            outOfBounds.put(12, digest.digest());
+            Files.write(path, outOfBounds.array());
+            assertThrows(IOException.class, () -> MacroLibrary.open(path).verify());
+            assertThrows(UncheckedIOException.class, () -> MacroLibrary.open(path).get("incr"));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static Macro macro(String... lines) {
+        var builder = new MacroBuilder();
+        for (var line : lines) builder.parseLine(line);
+        return builder.build();
+    }
+}
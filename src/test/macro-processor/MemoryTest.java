@@ -0,0 +1,46 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryTest {
+    @Test
+    void restoreBringsBackASnapshot() throws IOException {
+        var memory = new Memory();
+        memory.storeSymbol((short) 5);
+        memory.storeSymbol((short) 3);
+        memory.add(memory.symbolAddress((short) 0));
+        memory.cmp(memory.symbolAddress((short) 1));
+        memory.pushf();
+        memory.ip = 42;
+
+        var path = Files.createTempFile("memory", ".snapshot");
+        try {
+            memory.snapshot(path);
+
+            var restored = new Memory();
+            restored.restore(path);
+
+            assertArrayEquals(memory.data, restored.data);
+            assertEquals(42, restored.ip);
+
+            restored.storeAx(restored.symbolAddress((short) 1));
+            assertEquals(5, restored.get(restored.symbolAddress((short) 1)));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    void restoreRejectsOtherFiles() throws IOException {
+        var path = Files.createTempFile("memory", ".snapshot");
+        try {
+            Files.writeString(path, "not a snapshot");
+            assertThrows(IOException.class, () -> new Memory().restore(path));
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
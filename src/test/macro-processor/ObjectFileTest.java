@@ -0,0 +1,41 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObjectFileTest {
+    @Test
+    void loadFillsMemoryLikeLoadIntoMemory() throws IOException {
+        var assembled = new Program();
+        var intermediateFile = Sources.assemble(assembled, Sources.countTo(100));
+        var path = Files.createTempFile("program", ".obj");
+
+        try {
+            ObjectFile.write(intermediateFile, path);
+            assembled.loadIntoMemory(intermediateFile);
+
+            var loaded = new Memory();
+            ObjectFile.load(path, loaded);
+
+            assertArrayEquals(assembled.memory.data, loaded.data);
+            assertEquals(assembled.memory.codeEnd, loaded.codeEnd);
+            assertEquals(loaded.opStart, loaded.ip);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    void loadRejectsOtherFiles() throws IOException {
+        var path = Files.createTempFile("program", ".obj");
+
+        try {
+            Files.writeString(path, "a 1\nmax 100\n");
+            assertThrows(IOException.class, () -> ObjectFile.load(path, new Memory()));
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OperandLexerTest {
+    private final OperandLexer lexer = new OperandLexer(new NameTable(), Map.of("ax", (short) 7));
+
+    @Test
+    void lexNumbers() {
+        assertEquals(OpCode.Type.RegisterImmediate, lexer.lex("10").type);
+        assertEquals(10, lexer.lex("+10").value());
+        assertEquals(-10, lexer.lex("-10").value());
+        assertSame(lexer.lex("10"), lexer.lex("+10"));
+    }
+
+    @Test
+    void lexRegisters() {
+        var operand = lexer.lex("ax");
+
+        assertEquals(OpCode.Type.RegisterRegister, operand.type);
+        assertEquals(7, operand.value());
+    }
+
+    @Test
+    void lexSymbols() {
+        assertTrue(lexer.lex("max").isSymbol());
+        assertTrue(lexer.lex("#10").isSymbol());
+        assertTrue(lexer.lex("-").isSymbol());
+        assertThrows(NumberFormatException.class, () -> lexer.lex("max").value());
+    }
+
+    @Test
+    void lexInternsNames() {
+        var max = lexer.lex("max");
+
+        assertSame(max, lexer.lex("max"));
+        assertNotEquals(max.id, lexer.lex("min").id);
+        assertNotEquals(max.id, lexer.lex("ax").id);
+    }
+
+    @Test
+    void lexNumberOutOfRangeThrows() {
+        assertEquals(Short.MAX_VALUE, lexer.lex("32767").value());
+        assertEquals(Short.MIN_VALUE, lexer.lex("-32768").value());
+        assertThrows(NumberFormatException.class, () -> lexer.lex("32768"));
+        assertThrows(NumberFormatException.class, () -> lexer.lex("99999999999999999999"));
+    }
+}
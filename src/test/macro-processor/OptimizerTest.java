@@ -0,0 +1,87 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OptimizerTest {
+    private static final List<String> SOURCE = List.of(
+            "one 1",
+            "two 2",
+            "add one",
+            "cmp one",
+            "jz skip", // known to be taken
+            "write one",
+            "skip: jmp next",
+            "next: jmp out",
+            "out: store n",
+            "store n",
+            "cmp two",
+            "cmp one",
+            "pushf ax",
+            "popf ax",
+            "write n",
+            "jmp end",
+            "end: hlt ax"
+    );
+
+    @Test
+    void optimizeKeepsWhatTheProgramDoes() {
+        var program = Sources.assemble(SOURCE);
+        var optimized = Optimizer.optimize(program);
+
+        assertEquals(15, program.instructions.size());
+        assertEquals(
+                "[add_RX(0), cmp_RX(0), store_RX(5), cmp_RX(0), write_RX(5), hlt_RR(240)]",
+                optimized.instructions.toString()
+        );
+        assertEquals(run(program), run(optimized));
+    }
+
+    @Test
+    void labelsFollowTheInstructionsTheyPointAt() {
+        var source = List.of(
+                "one 1",
+                "max 3",
+                "jmp loop",
+                "write one", // unreachable
+                "loop: add one",
+                "store n",
+                "write n",
+                "cmp max",
+                "jp done",
+                "jmp loop",
+                "done: hlt ax"
+        );
+        var program = Sources.assemble(source);
+        var optimized = Optimizer.optimize(program);
+
+        assertEquals(7, optimized.instructions.size());
+        assertEquals(String.format("1%n2%n3%n"), run(optimized));
+    }
+
+    @Test
+    void storedSymbolsAreNotConstants() {
+        var source = List.of(
+                "one 1",
+                "n 0",
+                "add one",
+                "store n",
+                "cmp n", // n is 1 by now, not the 0 it was defined with
+                "jz equal",
+                "write one",
+                "equal: hlt ax"
+        );
+        var program = Sources.assemble(source);
+
+        assertEquals(run(program), run(Optimizer.optimize(program)));
+    }
+
+    private static String run(IntermediateFile program) {
+        var out = new ByteArrayOutputStream();
+        new Program(Program.Dispatch.TABLE, new Memory(new ByteArrayInputStream(new byte[0]), out)).secondPass(program);
+        return out.toString();
+    }
+}
@@ -0,0 +1,62 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProfileTest {
+    private static final List<String> SOURCE = List.of(
+            "one 1",
+            "max 3",
+            "loop: call inc",
+            "write n",
+            "cmp max",
+            "jp done",
+            "jmp loop",
+            "inc: add one",
+            "store n",
+            "ret ax",
+            "done: hlt ax"
+    );
+
+    @Test
+    void profileCountsOpcodesAddressesAndBranches() {
+        var out = new ByteArrayOutputStream();
+        var program = new Program(Program.Dispatch.TABLE, new Memory(new ByteArrayInputStream(new byte[0]), new PrintStream(out)));
+        program.enableProfiling();
+        program.secondPass(Sources.assemble(program, SOURCE));
+
+        var profile = program.profile();
+        assertEquals(String.format("1%n2%n3%n"), out.toString());
+        assertEquals(24, profile.instructions());
+        assertEquals(3, profile.opcodeCount(Program.CALL));
+        assertEquals(1, profile.opcodeCount(Program.HLT));
+        assertEquals(3, profile.hits(5));
+        assertEquals(1, profile.taken(3));
+        assertEquals(2, profile.notTaken(3));
+    }
+
+    @Test
+    void aBranchToTheNextInstructionCountsAsTaken() {
+        var program = new Program(Program.Dispatch.TABLE, new Memory(new ByteArrayInputStream(new byte[0]), new PrintStream(new ByteArrayOutputStream())));
+        program.enableProfiling();
+        program.secondPass(Sources.assemble(program, List.of("zero 0", "cmp zero", "jz next", "next: hlt ax")));
+
+        assertEquals(1, program.profile().taken(1));
+        assertEquals(0, program.profile().notTaken(1));
+    }
+
+    @Test
+    void collapsedStacksFollowCalls() throws Exception {
+        var program = new Program(Program.Dispatch.TABLE, new Memory(new ByteArrayInputStream(new byte[0]), new PrintStream(new ByteArrayOutputStream())));
+        program.enableProfiling();
+        program.secondPass(Sources.assemble(program, SOURCE));
+
+        var stacks = new StringBuilder();
+        program.profile().writeCollapsedStacks(stacks);
+        assertEquals("main 15\nmain;inc 9\n", stacks.toString());
+    }
+}
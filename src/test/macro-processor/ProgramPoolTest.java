@@ -0,0 +1,45 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProgramPoolTest {
+    @Test
+    void submitRunsProgramsWithTheirOwnOutput() throws Exception {
+        var sources = new ArrayList<Path>();
+        var outputs = new ArrayList<ByteArrayOutputStream>();
+        var runs = new ArrayList<CompletableFuture<Memory>>();
+
+        try (var pool = new ProgramPool()) {
+            for (int max = 1; max <= 20; max++) {
+                var source = Files.createTempFile("program", ".asm");
+                Files.write(source, Sources.countTo(max));
+                sources.add(source);
+
+                var output = new ByteArrayOutputStream();
+                outputs.add(output);
+
+                var in = new ByteArrayInputStream(new byte[0]);
+                runs.add(pool.submit(source.toString(), in, new PrintStream(output, true)));
+            }
+
+            for (int i = 0; i < runs.size(); i++) {
+                var memory = runs.get(i).get();
+                int max = i + 1;
+
+                assertTrue(memory.isHalted());
+                assertEquals(max, memory.getAx());
+                assertEquals(max, outputs.get(i).toString().lines().count());
+            }
+        } finally {
+            for (var source : sources) Files.delete(source);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchedulerTest {
+    private static final List<String> FOREVER = List.of(
+            "one 1",
+            "init: add one",
+            "jmp init",
+            "hlt ax"
+    );
+
+    @Test
+    void haltingProgramsCompleteNextToOnesThatNeverHalt() throws Exception {
+        try (var scheduler = new Scheduler(1, 10)) {
+            var forever = scheduler.submit(Sources.assemble(FOREVER), memory(), Long.MAX_VALUE);
+            var counter = scheduler.submit(Sources.assemble(Sources.countTo(100)), memory(), Long.MAX_VALUE);
+
+            assertEquals(100, counter.result().get().getAx());
+            assertFalse(forever.result().isDone());
+
+            forever.cancel();
+            assertThrows(CancellationException.class, () -> forever.result().get());
+        }
+    }
+
+    @Test
+    void programsFailWhenOutOfBudget() throws Exception {
+        try (var scheduler = new Scheduler(2, 7)) {
+            var run = scheduler.submit(Sources.assemble(FOREVER), memory(), 1000);
+
+            var error = assertThrows(ExecutionException.class, () -> run.result().get());
+            assertTrue(error.getCause() instanceof StepBudgetExceededException);
+            assertEquals(1000, run.steps());
+        }
+    }
+
+    @Test
+    void closeCancelsRunsThatHaventHalted() {
+        Scheduler.Run running;
+        Scheduler.Run queued;
+
+        // a quantum long enough that close mostly lands in the middle of a slice
+        try (var scheduler = new Scheduler(1, 1_000_000)) {
+            running = scheduler.submit(Sources.assemble(FOREVER), memory(), Long.MAX_VALUE);
+            queued = scheduler.submit(Sources.assemble(FOREVER), memory(), Long.MAX_VALUE);
+        }
+
+        assertTrue(running.result().isCancelled());
+        assertTrue(queued.result().isCancelled());
+    }
+
+    private static Memory memory() {
+        return new Memory(new ByteArrayInputStream(new byte[0]), new PrintStream(OutputStream.nullOutputStream()));
+    }
+}
@@ -0,0 +1,38 @@
+import java.util.List;
+
+/**
+ * Guest programs and the first pass over them, shared by the tests.
+ */
+class Sources {
+    private Sources() {
+    }
+
+    /**
+     * Adds one until it gets to max, writing every number on the way, and halts with max in ax.
+     */
+    static List<String> countTo(int max) {
+        return List.of(
+                "one 1",
+                "max " + max,
+                "init: add one",
+                "store n",
+                "write n",
+                "cmp max",
+                "jp exit",
+                "jmp init",
+                "exit: hlt ax"
+        );
+    }
+
+    static IntermediateFile assemble(String... source) {
+        return assemble(List.of(source));
+    }
+
+    static IntermediateFile assemble(List<String> source) {
+        return assemble(new Program(), source);
+    }
+
+    static IntermediateFile assemble(Program program, List<String> source) {
+        return program.firstPass(LineScanner.parse(source));
+    }
+}
@@ -0,0 +1,45 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SuperinstructionsTest {
+    // jumps straight into the middle of the add, store, write sequence
+    private static final List<String> SOURCE = List.of(
+            "a 1",
+            "max 3",
+            "jmp mid",
+            "init: add a",
+            "mid: store ab",
+            "write ab",
+            "cmp max",
+            "jp exit",
+            "jmp init",
+            "exit: hlt ax"
+    );
+
+    @Test
+    void fusedRunMatchesTheUnfusedOne() {
+        assertEquals(String.format("0%n1%n2%n3%n"), run(Program.Dispatch.TABLE));
+        assertEquals(run(Program.Dispatch.TABLE), run(Program.Dispatch.FUSED));
+    }
+
+    @Test
+    void fuseStartsASequenceAtEveryMatchingInstruction() {
+        var program = new Program(Program.Dispatch.TABLE);
+        program.loadIntoMemory(Sources.assemble(program, SOURCE));
+
+        // add+store+write, store+write, cmp+jp+jmp
+        assertEquals(3, Superinstructions.fuse(InstructionStream.decode(program.memory, new DispatchTable())));
+    }
+
+    private static String run(Program.Dispatch dispatch) {
+        var out = new ByteArrayOutputStream();
+        var program = new Program(dispatch, new Memory(new ByteArrayInputStream(new byte[0]), out));
+        program.secondPass(Sources.assemble(program, SOURCE));
+        return out.toString();
+    }
+}
@@ -0,0 +1,14 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SymbolTableTest {
+    @Test
+    void offsetsGoUpToTheLastShort() {
+        var table = new SymbolTable();
+        for (int id = 0; id < SymbolTable.MAX_SIZE; id++) table.put(new SymbolTableEntry(id, "s" + id));
+
+        assertEquals(Short.MAX_VALUE, table.offsetOf(table.get(SymbolTable.MAX_SIZE - 1)));
+        assertThrows(Error.class, () -> table.put(new SymbolTableEntry(SymbolTable.MAX_SIZE, "overflow")));
+    }
+}